@@ -0,0 +1,61 @@
+package benchmarks;
+
+import collection.Aggregates;
+import collection.CollectionElement;
+import collection.SortedCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class AggregatesBenchmark {
+    @Param({"false", "true"})
+    public boolean aggregated;
+
+    @Param({"10000", "1000000"})
+    public int elements;
+
+    private SortedCollection collection;
+    private Aggregates aggregates;
+    private Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        collection = new SortedCollection();
+        if (aggregated) {
+            aggregates = new Aggregates(collection);
+            collection.addListener(aggregates);
+        }
+        for (int i = 0; i < elements; i++) {
+            collection.add(element());
+        }
+    }
+
+    private CollectionElement element() {
+        return new CollectionElement("element", random.nextDouble() * 1000, random.nextDouble(), random.nextDouble());
+    }
+
+    @Benchmark
+    public Object addRemoveFirst() {
+        collection.add(element());
+        return collection.pollFirst();
+    }
+
+    @Benchmark
+    public double meanSize() {
+        if (aggregated) {
+            return aggregates.getMeanSize();
+        }
+        double sum = 0;
+        for (CollectionElement element : collection) {
+            sum += element.getSize();
+        }
+        return sum / collection.size();
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import net.Codecs;
+import net.Message;
+import net.MessageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({"binary", "serialization"})
+    public String codecName;
+
+    @Param({"0", "1", "100"})
+    public int elements;
+
+    private MessageCodec codec;
+    private Message message;
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(0x10000);
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = Codecs.forName(codecName);
+        List<CollectionElement> list = new ArrayList<>();
+        for (int i = 0; i < elements; i++) {
+            list.add(new CollectionElement("element" + i, i * 1.5, i, -i));
+        }
+        message = elements == 1
+                ? new Message(true, Message.Head.ADD, list.get(0))
+                : new Message(false, Message.Head.SHOW, elements == 0 ? null : list);
+
+        codec.encode(message, encodeBuffer);
+        encodeBuffer.flip();
+        encoded = ByteBuffer.allocate(encodeBuffer.remaining());
+        encoded.put(encodeBuffer).flip();
+
+        Message decoded = codec.decode(encoded.duplicate());
+        if (!message.toString().equals(decoded.toString())) {
+            throw new IllegalStateException("Round trip changed the message: " + decoded);
+        }
+        System.out.printf("%n%s: %d bytes%n", codecName, encoded.remaining());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws IOException {
+        encodeBuffer.clear();
+        codec.encode(message, encodeBuffer);
+        return encodeBuffer;
+    }
+
+    @Benchmark
+    public Message decode() throws IOException {
+        return codec.decode(encoded.duplicate());
+    }
+
+    @Benchmark
+    public Message roundTrip() throws IOException {
+        encodeBuffer.clear();
+        codec.encode(message, encodeBuffer);
+        encodeBuffer.flip();
+        return codec.decode(encodeBuffer);
+    }
+}
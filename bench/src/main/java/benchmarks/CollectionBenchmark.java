@@ -0,0 +1,145 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CollectionBenchmark {
+    @Param({"priorityQueue", "sortedCollection"})
+    public String implementation;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int elements;
+
+    private Store store;
+    private Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = "priorityQueue".equals(implementation) ? new QueueStore() : new SortedStore();
+        for (int i = 0; i < elements; i++) {
+            store.add(element());
+        }
+    }
+
+    private CollectionElement element() {
+        return new CollectionElement("element", random.nextDouble() * 1000, random.nextDouble(), random.nextDouble());
+    }
+
+    @Benchmark
+    public Object addRemoveFirst() {
+        store.add(element());
+        return store.removeFirst();
+    }
+
+    @Benchmark
+    public Object addRemoveLast() {
+        store.add(element());
+        return store.removeLast();
+    }
+
+    @Benchmark
+    public boolean addRemoveElement() {
+        CollectionElement element = element();
+        store.add(element);
+        return store.remove(element);
+    }
+
+    @Benchmark
+    public List<CollectionElement> show() {
+        return store.sorted();
+    }
+
+    private interface Store {
+        void add(CollectionElement element);
+
+        CollectionElement removeFirst();
+
+        CollectionElement removeLast();
+
+        boolean remove(CollectionElement element);
+
+        List<CollectionElement> sorted();
+    }
+
+    private static class QueueStore implements Store {
+        private final Queue<CollectionElement> collection = new PriorityBlockingQueue<>();
+
+        @Override
+        public void add(CollectionElement element) {
+            collection.add(element);
+        }
+
+        @Override
+        public CollectionElement removeFirst() {
+            return collection.poll();
+        }
+
+        @Override
+        public CollectionElement removeLast() {
+            synchronized (collection) {
+                Optional<CollectionElement> element = collection.stream().max(CollectionElement::compareTo);
+                element.map(collection::remove);
+                return element.orElse(null);
+            }
+        }
+
+        @Override
+        public boolean remove(CollectionElement element) {
+            return collection.remove(element);
+        }
+
+        @Override
+        public List<CollectionElement> sorted() {
+            List<CollectionElement> list;
+            synchronized (collection) {
+                list = new ArrayList<>(collection);
+            }
+            list.sort(CollectionElement::compareTo);
+            return list;
+        }
+    }
+
+    private static class SortedStore implements Store {
+        private final SortedCollection collection = new SortedCollection();
+
+        @Override
+        public void add(CollectionElement element) {
+            collection.add(element);
+        }
+
+        @Override
+        public CollectionElement removeFirst() {
+            return collection.pollFirst();
+        }
+
+        @Override
+        public CollectionElement removeLast() {
+            return collection.pollLast();
+        }
+
+        @Override
+        public boolean remove(CollectionElement element) {
+            return collection.remove(element);
+        }
+
+        @Override
+        public List<CollectionElement> sorted() {
+            return new ArrayList<>(collection);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementBenchmark {
+    private static final int ELEMENTS = 1024;
+
+    private CollectionElement[] elements = new CollectionElement[ELEMENTS];
+    private int index = 0;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < ELEMENTS; i++) {
+            elements[i] = new CollectionElement("element" + random.nextInt(100), random.nextInt(100),
+                    random.nextDouble(), random.nextDouble());
+        }
+    }
+
+    @Benchmark
+    public int compareTo() {
+        index = (index + 1) & (ELEMENTS - 1);
+        return elements[index].compareTo(elements[(index + 1) & (ELEMENTS - 1)]);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        index = (index + 1) & (ELEMENTS - 1);
+        return elements[index].hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsOf() {
+        index = (index + 1) & (ELEMENTS - 1);
+        return elements[index].equals(elements[(index + 1) & (ELEMENTS - 1)]);
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import collection.EvictionPolicy;
+import collection.SortedCollection;
+import org.openjdk.jmh.annotations.*;
+import storage.ColdTier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class EvictionBenchmark {
+    private static final int CAPACITY = 100_000;
+
+    @Param({"none", "smallest", "oldest", "lru"})
+    public String eviction;
+
+    @Param({"false", "true"})
+    public boolean cold;
+
+    private SortedCollection collection;
+    private ColdTier coldTier;
+    private Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        collection = new SortedCollection();
+        if (cold && !"none".equals(eviction)) {
+            File directory = Files.createTempDirectory("cold").toFile();
+            directory.deleteOnExit();
+            coldTier = new ColdTier(directory);
+            collection.addListener(coldTier);
+        }
+        if (!"none".equals(eviction)) {
+            collection.setCapacity(CAPACITY, 0, EvictionPolicy.forName(eviction));
+        }
+        for (int i = 0; i < 2 * CAPACITY; i++) {
+            collection.add(element());
+        }
+        if (coldTier != null) {
+            coldTier.flush();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (coldTier != null) {
+            coldTier.cleared();
+            coldTier.close();
+        }
+    }
+
+    private CollectionElement element() {
+        return new CollectionElement("element", random.nextDouble() * 1000, random.nextDouble(), random.nextDouble());
+    }
+
+    @Benchmark
+    public boolean add() {
+        return collection.add(element());
+    }
+
+    @Benchmark
+    public Object coldRange() {
+        double from = random.nextDouble() * 1000;
+        return coldTier == null ? null : coldTier.collect(from, from + 1, element -> true, null, 16);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FootprintBenchmark {
+    @Param({"OBJECTS", "COLUMNAR"})
+    public SortedCollection.Layout layout;
+
+    @Param({"1000000"})
+    public int elements;
+
+    private List<CollectionElement> source;
+    private SortedCollection collection;
+    private long baseline;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerElement;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        collection = null;
+        source = null;
+        baseline = usedHeap();
+        Random random = new Random(42);
+        source = new ArrayList<>(elements);
+        for (int i = 0; i < elements; i++) {
+            source.add(new CollectionElement("element-" + random.nextInt(1000), random.nextDouble() * 1000,
+                    random.nextDouble() * 1000, random.nextDouble() * 1000));
+        }
+    }
+
+    @Benchmark
+    public SortedCollection load(Footprint footprint) {
+        collection = new SortedCollection(layout);
+        collection.addAll(source);
+        source = null;
+        footprint.bytesPerElement = Math.max(0, usedHeap() - baseline) / elements;
+        return collection;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
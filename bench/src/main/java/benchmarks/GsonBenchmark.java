@@ -0,0 +1,31 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonBenchmark {
+    @Param({"{\"name\":\"element\",\"size\":42.5}",
+            "{\"name\":\"element\",\"size\":42.5,\"position\":{\"x\":1.5,\"y\":-2.5}}"})
+    public String line;
+
+    private Gson gson = new Gson();
+
+    @Benchmark
+    public CollectionElement sharedGson() {
+        return gson.fromJson(line, CollectionElement.class);
+    }
+
+    @Benchmark
+    public CollectionElement newGson() {
+        return new Gson().fromJson(line, CollectionElement.class);
+    }
+}
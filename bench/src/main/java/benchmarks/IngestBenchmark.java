@@ -0,0 +1,113 @@
+package benchmarks;
+
+import net.Codecs;
+import net.Message;
+import net.Server;
+import net.ServerConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"--add-opens", "java.base/java.util=ALL-UNNAMED",
+        "--add-opens", "java.base/java.lang=ALL-UNNAMED", "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED",
+        "--add-opens", "java.base/java.text=ALL-UNNAMED", "--add-opens", "java.desktop/java.awt.font=ALL-UNNAMED",
+        "--add-opens", "java.base/java.io=ALL-UNNAMED"})
+@Threads(8)
+public class IngestBenchmark {
+    private static final int PORT = 47_017;
+    private static final int WINDOW = 16;
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"1", "2", "4"})
+        public int receivers;
+
+        private Server server;
+        private Thread thread;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            File directory = Files.createTempDirectory("ingest").toFile();
+            ServerConfig config = new ServerConfig(PORT, new File(directory, "save"));
+            config.setReceivers(receivers);
+            server = new Server(config);
+            thread = new Thread(server::run, "server");
+            thread.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException, InterruptedException {
+            try (DatagramSocket socket = new DatagramSocket()) {
+                socket.setSoTimeout(1000);
+                byte[] stop = encode(new Message(true, Message.Head.STOP, null), 1);
+                socket.send(new DatagramPacket(stop, stop.length, InetAddress.getLoopbackAddress(), PORT));
+            }
+            thread.join(5000);
+            server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        private DatagramSocket socket;
+        private DatagramPacket[] requests = new DatagramPacket[WINDOW];
+        private DatagramPacket response = new DatagramPacket(new byte[0x10000], 0x10000);
+        public long lost;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            socket = new DatagramSocket();
+            socket.setSoTimeout(200);
+            for (int i = 0; i < WINDOW; i++) {
+                byte[] bytes = encode(new Message(true, Message.Head.INFO, null), i + 1);
+                requests[i] = new DatagramPacket(bytes, bytes.length, InetAddress.getLoopbackAddress(), PORT);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public int requests(ServerState server, ClientState client) throws IOException {
+        for (DatagramPacket request : client.requests) {
+            client.socket.send(request);
+        }
+
+        int received = 0;
+        try {
+            while (received < WINDOW) {
+                client.socket.receive(client.response);
+                received++;
+            }
+        } catch (SocketTimeoutException e) {
+            client.lost += WINDOW - received;
+        }
+        return received;
+    }
+
+    private static byte[] encode(Message message, long id) throws IOException {
+        message.setId(id);
+        ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+        Codecs.BINARY.encode(message, buffer);
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,132 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import net.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"--add-opens", "java.base/java.util=ALL-UNNAMED",
+        "--add-opens", "java.base/java.lang=ALL-UNNAMED", "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED",
+        "--add-opens", "java.base/java.text=ALL-UNNAMED", "--add-opens", "java.desktop/java.awt.font=ALL-UNNAMED",
+        "--add-opens", "java.base/java.io=ALL-UNNAMED"})
+public class ReplicationBenchmark {
+    private static final int PORT = 47_100;
+    private static final int ELEMENTS = 10_000;
+    private static final Pattern SIZE = Pattern.compile("of size (\\d+)");
+
+    @State(Scope.Benchmark)
+    public static class Cluster {
+        @Param({"0", "1", "3"})
+        public int replicas;
+
+        private final List<Server> servers = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicInteger nextNode = new AtomicInteger();
+        private ClientEngine primary;
+        private List<ClientEngine> nodes = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            for (int i = 0; i <= replicas; i++) {
+                File directory = Files.createTempDirectory("replication").toFile();
+                ServerConfig config = new ServerConfig(PORT + i, new File(directory, "save"));
+                if (i > 0) {
+                    config.setPrimary(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT));
+                }
+                Server server = new Server(config);
+                Thread thread = new Thread(server::run, "node-" + i);
+                thread.start();
+                servers.add(server);
+                threads.add(thread);
+                nodes.add(new ClientEngine(InetAddress.getLoopbackAddress(), PORT + i, Codecs.BINARY, 64));
+            }
+            primary = nodes.get(0);
+
+            Random random = new Random(42);
+            List<Batch.Operation> operations = new ArrayList<>();
+            for (int i = 0; i < ELEMENTS; i++) {
+                operations.add(new Batch.Operation(true, new CollectionElement("element" + random.nextInt(1000),
+                        random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 1000)));
+                if (operations.size() == 256 || i == ELEMENTS - 1) {
+                    primary.request(new Message(true, Message.Head.BATCH, new Batch(operations))).join();
+                    operations = new ArrayList<>();
+                }
+            }
+            for (ClientEngine node : nodes) {
+                awaitSize(node, ELEMENTS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException, InterruptedException {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                try {
+                    nodes.get(i).request(new Message(true, Message.Head.STOP, null)).get(5, TimeUnit.SECONDS);
+                } catch (Exception ignored) {
+                }
+                nodes.get(i).close();
+                threads.get(i).join(5000);
+                servers.get(i).close();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private ClientEngine node;
+        private final Query query = new Query();
+
+        @Setup(Level.Trial)
+        public void setUp(Cluster cluster) {
+            node = cluster.nodes.get(cluster.nextNode.getAndIncrement() % cluster.nodes.size());
+            query.setSizeRange(100.0, 200.0);
+            query.setLimit(16);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(8)
+    public ShowResult reads(Reader reader) {
+        return reader.node.query(reader.query).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int propagation(Cluster cluster) throws InterruptedException {
+        int size = size(cluster.primary) + 1;
+        cluster.primary.request(new Message(true, Message.Head.ADD, new CollectionElement("replicated", 1, 0, 0))).join();
+        for (ClientEngine node : cluster.nodes) {
+            awaitSize(node, size);
+        }
+        return size;
+    }
+
+    private static void awaitSize(ClientEngine node, int size) throws InterruptedException {
+        while (size(node) < size) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static int size(ClientEngine node) {
+        Matcher matcher = SIZE.matcher(String.valueOf(node.request(new Message(true, Message.Head.INFO, null))
+                .join().getBody()));
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
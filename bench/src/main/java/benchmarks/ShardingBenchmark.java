@@ -0,0 +1,100 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import net.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ShardingBenchmark {
+    private static final int PORT = 47_200;
+    private static final double MAX_SIZE = 1000;
+    private static final List<String> OPENS = Arrays.asList("--add-opens", "java.base/java.util=ALL-UNNAMED",
+            "--add-opens", "java.base/java.lang=ALL-UNNAMED", "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED",
+            "--add-opens", "java.base/java.text=ALL-UNNAMED", "--add-opens", "java.desktop/java.awt.font=ALL-UNNAMED",
+            "--add-opens", "java.base/java.io=ALL-UNNAMED");
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private final List<Process> processes = new ArrayList<>();
+    private ShardRouter router;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File directory = Files.createTempDirectory("sharding").toFile();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        double[] bounds = new double[shards - 1];
+        for (int i = 0; i < shards; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(OPENS);
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                    "Main", "server", String.valueOf(PORT + i)));
+            ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+            builder.environment().put("LAB6_SAVE_PATH", new File(directory, "shard" + i).getPath());
+            builder.environment().put("LAB6_SHARD", i + "/" + shards);
+            processes.add(builder.start());
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT + i));
+            if (i > 0) {
+                bounds[i - 1] = MAX_SIZE * i / shards;
+            }
+        }
+
+        router = new ShardRouter(addresses, bounds, Codecs.BINARY, 64);
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30); ; ) {
+            try {
+                router.request(new Message(true, Message.Head.INFO, null)).join();
+                break;
+            } catch (RuntimeException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        try {
+            router.request(new Message(true, Message.Head.STOP, null)).get(5, TimeUnit.SECONDS);
+        } catch (Exception ignored) {
+        }
+        router.close();
+        for (Process process : processes) {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    @Benchmark
+    public Message add() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CollectionElement element = new CollectionElement("element" + random.nextInt(1000),
+                random.nextDouble() * MAX_SIZE, random.nextDouble(), random.nextDouble());
+        return router.request(new Message(true, Message.Head.ADD, element)).join();
+    }
+
+    @Benchmark
+    public ShowResult firstPage() {
+        return router.show(new ShowRequest(0, 100)).join();
+    }
+}
@@ -0,0 +1,108 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import collection.Position;
+import collection.SpatialIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SpatialBenchmark {
+    private static final double EXTENT = 10_000;
+
+    @Param({"grid", "linear"})
+    public String implementation;
+
+    @Param({"1000000", "4000000"})
+    public int elements;
+
+    private SpatialIndex index;
+    private List<CollectionElement> list;
+    private Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = new ArrayList<>(elements);
+        for (int i = 0; i < elements; i++) {
+            list.add(new CollectionElement("element", random.nextDouble(),
+                    random.nextDouble() * EXTENT, random.nextDouble() * EXTENT));
+        }
+        if ("grid".equals(implementation)) {
+            index = new SpatialIndex(16);
+            list.forEach(index::added);
+        }
+    }
+
+    @Benchmark
+    public List<CollectionElement> within() {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        if (index != null) {
+            return index.within(x, y, x + 50, y + 50);
+        }
+
+        List<CollectionElement> result = new ArrayList<>();
+        for (CollectionElement element : list) {
+            Position position = element.getPosition();
+            if (position.getX() >= x && position.getX() <= x + 50 && position.getY() >= y && position.getY() <= y + 50) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<CollectionElement> radius() {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        if (index != null) {
+            return index.radius(x, y, 25);
+        }
+
+        List<CollectionElement> result = new ArrayList<>();
+        for (CollectionElement element : list) {
+            if (distanceSquared(element, x, y) <= 25 * 25) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<CollectionElement> nearest() {
+        double x = random.nextDouble() * EXTENT;
+        double y = random.nextDouble() * EXTENT;
+        if (index != null) {
+            return index.nearest(x, y, 10);
+        }
+
+        Comparator<CollectionElement> byDistance = Comparator.comparingDouble(element -> distanceSquared(element, x, y));
+        PriorityQueue<CollectionElement> best = new PriorityQueue<>(11, byDistance.reversed());
+        for (CollectionElement element : list) {
+            best.add(element);
+            if (best.size() > 10) {
+                best.poll();
+            }
+        }
+        List<CollectionElement> result = new ArrayList<>(best);
+        result.sort(byDistance);
+        return result;
+    }
+
+    private static double distanceSquared(CollectionElement element, double x, double y) {
+        double dx = element.getPosition().getX() - x;
+        double dy = element.getPosition().getY() - y;
+        return dx * dx + dy * dy;
+    }
+}
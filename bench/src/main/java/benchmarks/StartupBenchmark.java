@@ -0,0 +1,71 @@
+package benchmarks;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+import org.openjdk.jmh.annotations.*;
+import storage.ColumnarStorage;
+import storage.Storage;
+import storage.XmlStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g",
+        "--add-opens", "java.base/java.util=ALL-UNNAMED",
+        "--add-opens", "java.base/java.lang=ALL-UNNAMED",
+        "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED",
+        "--add-opens", "java.base/java.text=ALL-UNNAMED",
+        "--add-opens", "java.desktop/java.awt.font=ALL-UNNAMED"})
+public class StartupBenchmark {
+    @Param({"xml", "columnar"})
+    public String format;
+
+    @Param({"10000", "100000", "1000000"})
+    public int elements;
+
+    private File file;
+    private SortedCollection saved;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("lab6-startup", "." + format);
+        file.deleteOnExit();
+
+        Random random = new Random(42);
+        saved = new SortedCollection();
+        for (int i = 0; i < elements; i++) {
+            saved.add(new CollectionElement("element" + random.nextInt(1000),
+                    random.nextDouble() * 1000, random.nextDouble(), random.nextDouble()));
+        }
+        storage().save(saved);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public SortedCollection load() throws IOException {
+        SortedCollection collection = new SortedCollection();
+        storage().load(collection);
+        return collection;
+    }
+
+    @Benchmark
+    public File save() throws IOException {
+        storage().save(saved);
+        return file;
+    }
+
+    private Storage storage() {
+        return "xml".equals(format) ? new XmlStorage(file) : new ColumnarStorage(file);
+    }
+}
@@ -1,13 +1,19 @@
 import cli.InvalidCommandLineArgumentException;
+import net.BenchConfig;
 import net.Client;
+import net.LoadGenerator;
 import net.Server;
+import storage.SnapshotConverter;
 
+import java.io.File;
 import java.io.IOException;
 
 public class Main {
     public static void main(String[] args) {
         boolean isClient = args.length != 0 && "client".equals(args[0]);
         boolean isServer = args.length != 0 && "server".equals(args[0]);
+        boolean isConvert = args.length != 0 && "convert".equals(args[0]);
+        boolean isBench = args.length != 0 && "bench".equals(args[0]);
 
         if (isClient) {
             try (Client c = new Client(args)) {
@@ -21,8 +27,25 @@ public class Main {
             } catch (IOException | InvalidCommandLineArgumentException e) {
                 System.err.println(e.getMessage());
             }
+        } else if (isBench) {
+            try (LoadGenerator generator = new LoadGenerator(BenchConfig.fromArgs(args))) {
+                generator.run();
+            } catch (IOException | InvalidCommandLineArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        } else if (isConvert) {
+            if (args.length < 3) {
+                System.err.println("You should specify input and output files");
+                return;
+            }
+            try {
+                int count = SnapshotConverter.convert(new File(args[1]), new File(args[2]));
+                System.out.printf("Converted %d elements%n", count);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
         } else {
-            System.err.println("You should specify 'client' or 'server'");
+            System.err.println("You should specify 'client', 'server', 'bench' or 'convert'");
         }
     }
 }
@@ -0,0 +1,189 @@
+package collection;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Aggregates implements CollectionListener {
+    private static final int NON_POSITIVE = Integer.MIN_VALUE;
+    private static final int NON_FINITE = Integer.MAX_VALUE;
+
+    private final SortedCollection collection;
+    private final RemovableMinMax xs = new RemovableMinMax();
+    private final RemovableMinMax ys = new RemovableMinMax();
+    private final RemovableMinMax created = new RemovableMinMax();
+    private final RemovableMinMax evictedSizes = new RemovableMinMax();
+    private final TreeMap<Integer, Integer> histogram = new TreeMap<>();
+    private int count = 0;
+    private int finite = 0;
+    private double sum = 0;
+    private boolean keepEvicted = false;
+
+    public Aggregates(SortedCollection collection) {
+        this.collection = collection;
+    }
+
+    @Override
+    public synchronized void added(CollectionElement element) {
+        count++;
+        if (Double.isFinite(element.getSize())) {
+            finite++;
+            sum += element.getSize();
+        }
+        histogram.merge(bucket(element.getSize()), 1, Integer::sum);
+        Position position = element.getPosition();
+        if (position != null) {
+            xs.add(position.getX());
+            ys.add(position.getY());
+        }
+        Date creationDate = element.getCreationDate();
+        if (creationDate != null) {
+            created.add(creationDate.getTime());
+        }
+    }
+
+    @Override
+    public synchronized void removed(CollectionElement element) {
+        count--;
+        if (Double.isFinite(element.getSize())) {
+            finite--;
+            sum = finite == 0 ? 0 : sum - element.getSize();
+        }
+        histogram.computeIfPresent(bucket(element.getSize()), (key, value) -> value == 1 ? null : value - 1);
+        Position position = element.getPosition();
+        if (position != null) {
+            xs.remove(position.getX());
+            ys.remove(position.getY());
+        }
+        Date creationDate = element.getCreationDate();
+        if (creationDate != null) {
+            created.remove(creationDate.getTime());
+        }
+    }
+
+    @Override
+    public synchronized void cleared() {
+        count = 0;
+        finite = 0;
+        sum = 0;
+        histogram.clear();
+        evictedSizes.clear();
+        xs.clear();
+        ys.clear();
+        created.clear();
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public synchronized void evicted(List<CollectionElement> elements) {
+        for (CollectionElement element : elements) {
+            if (keepEvicted) {
+                evictedSizes.add(element.getSize());
+            } else {
+                removed(element);
+            }
+        }
+    }
+
+    public synchronized void setKeepEvicted(boolean keepEvicted) {
+        this.keepEvicted = keepEvicted;
+    }
+
+    public synchronized void addEvicted(CollectionElement element) {
+        added(element);
+        evictedSizes.add(element.getSize());
+    }
+
+    @Override
+    public synchronized void removedEvicted(CollectionElement element) {
+        removed(element);
+        evictedSizes.remove(element.getSize());
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized double getMinSize() {
+        CollectionElement first = collection.first();
+        double evicted = evictedSizes.min();
+        return first == null || evicted < first.getSize() ? evicted : first.getSize();
+    }
+
+    public synchronized double getMaxSize() {
+        CollectionElement last = collection.last();
+        double evicted = evictedSizes.max();
+        return last == null || evicted > last.getSize() ? evicted : last.getSize();
+    }
+
+    public synchronized double getMeanSize() {
+        return finite == 0 ? Double.NaN : sum / finite;
+    }
+
+    public synchronized double getMinX() {
+        return xs.min();
+    }
+
+    public synchronized double getMaxX() {
+        return xs.max();
+    }
+
+    public synchronized double getMinY() {
+        return ys.min();
+    }
+
+    public synchronized double getMaxY() {
+        return ys.max();
+    }
+
+    public synchronized Date getOldest() {
+        return created.isEmpty() ? null : new Date((long) created.min());
+    }
+
+    public synchronized Date getNewest() {
+        return created.isEmpty() ? null : new Date((long) created.max());
+    }
+
+    public synchronized Map<Integer, Integer> getHistogram() {
+        return new TreeMap<>(histogram);
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return "empty";
+        }
+
+        StringBuilder buckets = new StringBuilder();
+        for (Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+            buckets.append(buckets.length() == 0 ? "" : ", ");
+            if (entry.getKey() == NON_POSITIVE) {
+                buckets.append("<= 0");
+            } else if (entry.getKey() == NON_FINITE) {
+                buckets.append("not finite");
+            } else {
+                buckets.append(String.format("[%s, %s)", Math.scalb(1.0, entry.getKey()), Math.scalb(1.0, entry.getKey() + 1)));
+            }
+            buckets.append(": ").append(entry.getValue());
+        }
+        return String.format("size: min %f, max %f, mean %f%n"
+                        + "positions: x from %f to %f, y from %f to %f%n"
+                        + "created: oldest %s, newest %s%n"
+                        + "size histogram: %s",
+                getMinSize(), getMaxSize(), getMeanSize(),
+                getMinX(), getMaxX(), getMinY(), getMaxY(),
+                getOldest(), getNewest(), buckets);
+    }
+
+    private static int bucket(double size) {
+        if (!Double.isFinite(size)) {
+            return NON_FINITE;
+        }
+        return size > 0 ? Math.getExponent(size) : NON_POSITIVE;
+    }
+}
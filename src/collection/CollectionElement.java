@@ -5,15 +5,26 @@ import java.util.Date;
 import java.util.Objects;
 
 public class CollectionElement implements Serializable, Cloneable, Comparable<CollectionElement> {
+    private static final long serialVersionUID = 8235652683150432721L;
+
     private String name;
     private double size;
     private Position position;
-    private Date creationDate = new Date();
+    private Date creationDate;
+    private long id;
 
     public CollectionElement(String name, double size, Position position) {
         this.name = name;
         this.size = size;
         this.position = position.clone();
+        this.creationDate = new Date();
+    }
+
+    public CollectionElement(String name, double size, Position position, Date creationDate) {
+        this.name = name;
+        this.size = size;
+        this.position = position == null ? null : position.clone();
+        this.creationDate = new Date(creationDate.getTime());
     }
 
     public CollectionElement(String name, double size, double x, double y) {
@@ -24,26 +35,54 @@ public class CollectionElement implements Serializable, Cloneable, Comparable<Co
         this("", 0, 0, 0);
     }
 
+    protected CollectionElement(long id) {
+        this.id = id;
+    }
+
     @Override
     public CollectionElement clone() {
-        return new CollectionElement(name, size, position);
+        return new CollectionElement(getName(), getSize(), getPosition());
     }
 
     @Override
     public int compareTo(CollectionElement collectionElement) {
-        return Double.compare(size, collectionElement.size);
+        return Double.compare(getSize(), collectionElement.getSize());
     }
 
     @Override
     public String toString() {
-        return String.format("{ name: %s; size: %f; position: %s; created: %s }",
-                name == null || name.isEmpty() ? "<empty>" : name,
-                size, position, creationDate);
+        String name = getName();
+        return String.format("{ id: %d; name: %s; size: %f; position: %s; created: %s }",
+                getId(), name == null || name.isEmpty() ? "<empty>" : name,
+                getSize(), getPosition(), getCreationDate());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CollectionElement)) {
+            return false;
+        }
+        CollectionElement element = (CollectionElement) o;
+        return Double.compare(getSize(), element.getSize()) == 0
+                && Objects.equals(getName(), element.getName())
+                && Objects.equals(getPosition(), element.getPosition())
+                && Objects.equals(getCreationDate(), element.getCreationDate());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(CollectionElement.class, name, size, position, creationDate);
+        return Objects.hash(CollectionElement.class, getName(), getSize(), getPosition(), getCreationDate());
+    }
+
+    public boolean isValid() {
+        return creationDate != null && !Double.isNaN(size);
+    }
+
+    public long getId() {
+        return id;
     }
 
     public String getName() {
@@ -59,7 +98,11 @@ public class CollectionElement implements Serializable, Cloneable, Comparable<Co
     }
 
     public Date getCreationDate() {
-        return new Date(creationDate.getTime());
+        return creationDate == null ? null : new Date(creationDate.getTime());
+    }
+
+    public void setId(long id) {
+        this.id = id;
     }
 
     public void setName(String name) {
@@ -0,0 +1,27 @@
+package collection;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface CollectionListener {
+    void added(CollectionElement element);
+
+    void removed(CollectionElement element);
+
+    void cleared();
+
+    default void relocated(Collection<CollectionElement> elements) {
+        cleared();
+        elements.forEach(this::added);
+    }
+
+    default void evicting(List<CollectionElement> elements) {
+    }
+
+    default void evicted(List<CollectionElement> elements) {
+        elements.forEach(this::removed);
+    }
+
+    default void removedEvicted(CollectionElement element) {
+    }
+}
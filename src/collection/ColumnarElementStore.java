@@ -0,0 +1,109 @@
+package collection;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+final class ColumnarElementStore extends ElementStore {
+    private static final int SEGMENT_BITS = 14;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final byte FLAG_POSITION = 1;
+
+    private volatile Segment[] segments = new Segment[4];
+    private volatile String[] names = new String[16];
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+    private int slots = 0;
+
+    @Override
+    int append(CollectionElement element) {
+        int segmentIndex = slots >>> SEGMENT_BITS;
+        if (segmentIndex == segments.length) {
+            segments = Arrays.copyOf(segments, segmentIndex * 2);
+        }
+        Segment segment = segments[segmentIndex];
+        if (segment == null) {
+            segment = new Segment();
+            segments[segmentIndex] = segment;
+        }
+
+        int i = slots & SEGMENT_MASK;
+        Position position = element.getPosition();
+        segment.size[i] = element.getSize();
+        segment.x[i] = position == null ? 0 : position.getX();
+        segment.y[i] = position == null ? 0 : position.getY();
+        segment.flags[i] = position == null ? 0 : FLAG_POSITION;
+        segment.created[i] = element.getCreationDate().getTime();
+        segment.id[i] = element.getId();
+        segment.name[i] = intern(element.getName());
+        return slots++;
+    }
+
+    @Override
+    CollectionElement get(int slot) {
+        return new ElementView(this, slot);
+    }
+
+    @Override
+    double size(int slot) {
+        return segments[slot >>> SEGMENT_BITS].size[slot & SEGMENT_MASK];
+    }
+
+    @Override
+    long id(int slot) {
+        return segments[slot >>> SEGMENT_BITS].id[slot & SEGMENT_MASK];
+    }
+
+    @Override
+    int slots() {
+        return slots;
+    }
+
+    @Override
+    ElementStore empty() {
+        return new ColumnarElementStore();
+    }
+
+    String name(int slot) {
+        int index = segments[slot >>> SEGMENT_BITS].name[slot & SEGMENT_MASK];
+        return index < 0 ? null : names[index];
+    }
+
+    Position position(int slot) {
+        Segment segment = segments[slot >>> SEGMENT_BITS];
+        int i = slot & SEGMENT_MASK;
+        return (segment.flags[i] & FLAG_POSITION) == 0 ? null : new Position(segment.x[i], segment.y[i]);
+    }
+
+    Date creationDate(int slot) {
+        return new Date(segments[slot >>> SEGMENT_BITS].created[slot & SEGMENT_MASK]);
+    }
+
+    private int intern(String name) {
+        if (name == null) {
+            return -1;
+        }
+
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = nameIndexes.size();
+            if (index == names.length) {
+                names = Arrays.copyOf(names, index * 2);
+            }
+            names[index] = name;
+            nameIndexes.put(name, index);
+        }
+        return index;
+    }
+
+    private static final class Segment {
+        final double[] size = new double[SEGMENT_SIZE];
+        final double[] x = new double[SEGMENT_SIZE];
+        final double[] y = new double[SEGMENT_SIZE];
+        final long[] created = new long[SEGMENT_SIZE];
+        final long[] id = new long[SEGMENT_SIZE];
+        final int[] name = new int[SEGMENT_SIZE];
+        final byte[] flags = new byte[SEGMENT_SIZE];
+    }
+}
@@ -0,0 +1,15 @@
+package collection;
+
+abstract class ElementStore {
+    abstract int append(CollectionElement element);
+
+    abstract CollectionElement get(int slot);
+
+    abstract double size(int slot);
+
+    abstract long id(int slot);
+
+    abstract int slots();
+
+    abstract ElementStore empty();
+}
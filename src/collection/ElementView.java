@@ -0,0 +1,72 @@
+package collection;
+
+import java.util.Date;
+
+final class ElementView extends CollectionElement {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ColumnarElementStore store;
+    private final transient int slot;
+
+    ElementView(ColumnarElementStore store, int slot) {
+        super(0);
+        this.store = store;
+        this.slot = slot;
+    }
+
+    @Override
+    public long getId() {
+        return store.id(slot);
+    }
+
+    @Override
+    public String getName() {
+        return store.name(slot);
+    }
+
+    @Override
+    public double getSize() {
+        return store.size(slot);
+    }
+
+    @Override
+    public Position getPosition() {
+        return store.position(slot);
+    }
+
+    @Override
+    public Date getCreationDate() {
+        return store.creationDate(slot);
+    }
+
+    @Override
+    public boolean isValid() {
+        return !Double.isNaN(getSize());
+    }
+
+    @Override
+    public void setId(long id) {
+        throw new UnsupportedOperationException("Stored elements are read-only");
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Stored elements are read-only");
+    }
+
+    @Override
+    public void setSize(double size) {
+        throw new UnsupportedOperationException("Stored elements are read-only");
+    }
+
+    @Override
+    public void setPosition(Position position) {
+        throw new UnsupportedOperationException("Stored elements are read-only");
+    }
+
+    private Object writeReplace() {
+        CollectionElement element = new CollectionElement(getName(), getSize(), getPosition(), getCreationDate());
+        element.setId(getId());
+        return element;
+    }
+}
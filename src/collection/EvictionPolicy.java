@@ -0,0 +1,21 @@
+package collection;
+
+public interface EvictionPolicy extends CollectionListener {
+    long victim(Snapshot snapshot);
+
+    default void accessed(CollectionElement element) {
+    }
+
+    static EvictionPolicy forName(String name) {
+        switch (name) {
+            case "smallest":
+                return new SmallestSizeEviction();
+            case "oldest":
+                return new OldestCreatedEviction();
+            case "lru":
+                return new LeastRecentlyUsedEviction();
+            default:
+                return null;
+        }
+    }
+}
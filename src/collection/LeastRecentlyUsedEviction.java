@@ -0,0 +1,44 @@
+package collection;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class LeastRecentlyUsedEviction implements EvictionPolicy {
+    private final LinkedHashMap<Long, Boolean> byAccess = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public synchronized long victim(Snapshot snapshot) {
+        Iterator<Long> ids = byAccess.keySet().iterator();
+        return ids.hasNext() ? ids.next() : -1;
+    }
+
+    @Override
+    public synchronized void accessed(CollectionElement element) {
+        byAccess.get(element.getId());
+    }
+
+    @Override
+    public synchronized void added(CollectionElement element) {
+        byAccess.put(element.getId(), Boolean.TRUE);
+    }
+
+    @Override
+    public synchronized void removed(CollectionElement element) {
+        byAccess.remove(element.getId());
+    }
+
+    @Override
+    public synchronized void cleared() {
+        byAccess.clear();
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public String toString() {
+        return "lru";
+    }
+}
@@ -0,0 +1,42 @@
+package collection;
+
+import java.util.Arrays;
+
+final class ObjectElementStore extends ElementStore {
+    private volatile CollectionElement[] elements = new CollectionElement[16];
+    private int slots = 0;
+
+    @Override
+    int append(CollectionElement element) {
+        if (slots == elements.length) {
+            elements = Arrays.copyOf(elements, slots * 2);
+        }
+        elements[slots] = element;
+        return slots++;
+    }
+
+    @Override
+    CollectionElement get(int slot) {
+        return elements[slot];
+    }
+
+    @Override
+    double size(int slot) {
+        return elements[slot].getSize();
+    }
+
+    @Override
+    long id(int slot) {
+        return elements[slot].getId();
+    }
+
+    @Override
+    int slots() {
+        return slots;
+    }
+
+    @Override
+    ElementStore empty() {
+        return new ObjectElementStore();
+    }
+}
@@ -0,0 +1,46 @@
+package collection;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.TreeSet;
+
+public class OldestCreatedEviction implements EvictionPolicy {
+    private final TreeSet<long[]> byCreation = new TreeSet<>(Comparator
+            .<long[]>comparingLong(key -> key[0])
+            .thenComparingLong(key -> key[1]));
+
+    @Override
+    public synchronized long victim(Snapshot snapshot) {
+        return byCreation.isEmpty() ? -1 : byCreation.first()[1];
+    }
+
+    @Override
+    public synchronized void added(CollectionElement element) {
+        byCreation.add(key(element));
+    }
+
+    @Override
+    public synchronized void removed(CollectionElement element) {
+        byCreation.remove(key(element));
+    }
+
+    @Override
+    public synchronized void cleared() {
+        byCreation.clear();
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public String toString() {
+        return "oldest";
+    }
+
+    private static long[] key(CollectionElement element) {
+        Date creationDate = element.getCreationDate();
+        return new long[]{creationDate == null ? Long.MIN_VALUE : creationDate.getTime(), element.getId()};
+    }
+}
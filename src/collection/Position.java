@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.Objects;
 
 public class Position implements Cloneable, Serializable {
+    private static final long serialVersionUID = 5907845386734870004L;
+
     private double x, y;
 
     public Position(double x, double y) {
@@ -25,6 +27,15 @@ public class Position implements Cloneable, Serializable {
         return String.format("(%f; %f)", x, y);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        Position position = (Position) o;
+        return Double.compare(x, position.x) == 0 && Double.compare(y, position.y) == 0;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(x, y);
@@ -0,0 +1,34 @@
+package collection;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+class RemovableMinMax {
+    private final TreeMap<Double, Integer> counts = new TreeMap<>();
+
+    void add(double value) {
+        counts.merge(value, 1, Integer::sum);
+    }
+
+    void remove(double value) {
+        counts.computeIfPresent(value, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    void clear() {
+        counts.clear();
+    }
+
+    boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    double min() {
+        Map.Entry<Double, Integer> entry = counts.firstEntry();
+        return entry == null ? Double.NaN : entry.getKey();
+    }
+
+    double max() {
+        Map.Entry<Double, Integer> entry = counts.lastEntry();
+        return entry == null ? Double.NaN : entry.getKey();
+    }
+}
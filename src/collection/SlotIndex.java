@@ -0,0 +1,92 @@
+package collection;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+final class SlotIndex {
+    private static final int EMPTY = -1;
+    private static final int DELETED = -2;
+
+    private final IntUnaryOperator hash;
+    private int[] table = newTable(16);
+    private int size = 0;
+    private int used = 0;
+
+    SlotIndex(IntUnaryOperator hash) {
+        this.hash = hash;
+    }
+
+    void add(int slot) {
+        if ((used + 1) * 2 > table.length) {
+            resize();
+        }
+
+        int mask = table.length - 1;
+        int i = mix(hash.applyAsInt(slot)) & mask;
+        while (table[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == EMPTY) {
+            used++;
+        }
+        table[i] = slot;
+        size++;
+    }
+
+    int find(int hashCode, IntPredicate matches) {
+        int mask = table.length - 1;
+        for (int i = mix(hashCode) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] >= 0 && matches.test(table[i])) {
+                return table[i];
+            }
+        }
+        return -1;
+    }
+
+    boolean remove(int slot) {
+        int mask = table.length - 1;
+        for (int i = mix(hash.applyAsInt(slot)) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == slot) {
+                table[i] = DELETED;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void clear() {
+        table = newTable(16);
+        size = 0;
+        used = 0;
+    }
+
+    private void resize() {
+        int capacity = 16;
+        while (capacity < size * 4) {
+            capacity <<= 1;
+        }
+
+        int[] old = table;
+        table = newTable(capacity);
+        size = 0;
+        used = 0;
+        for (int slot : old) {
+            if (slot >= 0) {
+                add(slot);
+            }
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int mix(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
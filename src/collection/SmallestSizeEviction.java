@@ -0,0 +1,32 @@
+package collection;
+
+import java.util.Collection;
+
+public class SmallestSizeEviction implements EvictionPolicy {
+    @Override
+    public long victim(Snapshot snapshot) {
+        CollectionElement first = snapshot.first();
+        return first == null ? -1 : first.getId();
+    }
+
+    @Override
+    public void added(CollectionElement element) {
+    }
+
+    @Override
+    public void removed(CollectionElement element) {
+    }
+
+    @Override
+    public void cleared() {
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public String toString() {
+        return "smallest";
+    }
+}
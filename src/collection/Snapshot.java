@@ -0,0 +1,287 @@
+package collection;
+
+import java.util.*;
+
+public final class Snapshot extends AbstractList<CollectionElement> implements RandomAccess {
+    private final ElementStore store;
+    private final Node root;
+    private final long version;
+
+    Snapshot(ElementStore store, Node root, long version) {
+        this.store = store;
+        this.root = root;
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public int size() {
+        return count(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public CollectionElement get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        Node node = root;
+        while (true) {
+            int leftCount = count(node.left);
+            if (index < leftCount) {
+                node = node.left;
+            } else if (index == leftCount) {
+                return store.get(node.slot);
+            } else {
+                index -= leftCount + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    public CollectionElement first() {
+        Node node = firstNode(root);
+        return node == null ? null : store.get(node.slot);
+    }
+
+    public CollectionElement last() {
+        Node node = lastNode(root);
+        return node == null ? null : store.get(node.slot);
+    }
+
+    public boolean includes(CollectionElement element) {
+        Node node = root;
+        while (node != null) {
+            int compared = Double.compare(element.getSize(), store.size(node.slot));
+            if (compared == 0) {
+                compared = Long.compare(element.getId(), store.id(node.slot));
+            }
+            if (compared == 0) {
+                return true;
+            }
+            node = compared < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    public int headCount(double size, boolean inclusive) {
+        int result = 0;
+        Node node = root;
+        while (node != null) {
+            int compared = Double.compare(store.size(node.slot), size);
+            if (compared < 0 || compared == 0 && inclusive) {
+                result += count(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    public Iterator<CollectionElement> iterator(int from) {
+        Iterator<Node> nodes = nodes(from);
+        return new Iterator<CollectionElement>() {
+            @Override
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            @Override
+            public CollectionElement next() {
+                return store.get(nodes.next().slot);
+            }
+        };
+    }
+
+    public List<CollectionElement> slice(int from, int to) {
+        from = Math.max(0, Math.min(from, size()));
+        to = Math.max(from, Math.min(to, size()));
+        List<CollectionElement> list = new ArrayList<>(to - from);
+        Iterator<Node> nodes = nodes(from);
+        for (int i = from; i < to; i++) {
+            list.add(store.get(nodes.next().slot));
+        }
+        return list;
+    }
+
+    @Override
+    public Iterator<CollectionElement> iterator() {
+        return iterator(0);
+    }
+
+    ElementStore getStore() {
+        return store;
+    }
+
+    Node getRoot() {
+        return root;
+    }
+
+    Iterator<Node> nodes(int from) {
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (node != null) {
+            int leftCount = count(node.left);
+            if (from < leftCount) {
+                path.push(node);
+                node = node.left;
+            } else if (from == leftCount) {
+                path.push(node);
+                break;
+            } else {
+                from -= leftCount + 1;
+                node = node.right;
+            }
+        }
+
+        return new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Node next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node next = path.pop();
+                for (Node child = next.right; child != null; child = child.left) {
+                    path.push(child);
+                }
+                return next;
+            }
+        };
+    }
+
+    static Node firstNode(Node node) {
+        while (node != null && node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    static Node lastNode(Node node) {
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    static Node insert(ElementStore store, Node node, int slot) {
+        if (node == null) {
+            return new Node(slot, null, null);
+        }
+        if (compare(store, slot, node) < 0) {
+            return balance(node.with(insert(store, node.left, slot), node.right));
+        } else {
+            return balance(node.with(node.left, insert(store, node.right, slot)));
+        }
+    }
+
+    static Node delete(ElementStore store, Node node, int slot) {
+        if (node == null) {
+            return null;
+        }
+
+        int compared = compare(store, slot, node);
+        if (compared < 0) {
+            Node left = delete(store, node.left, slot);
+            return left == node.left ? node : balance(node.with(left, node.right));
+        } else if (compared > 0) {
+            Node right = delete(store, node.right, slot);
+            return right == node.right ? node : balance(node.with(node.left, right));
+        }
+
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+        Node successor = firstNode(node.right);
+        Node right = delete(store, node.right, successor.slot);
+        return balance(new Node(successor.slot, node.left, right));
+    }
+
+    static Node build(int[] sorted, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        return new Node(sorted[middle], build(sorted, from, middle), build(sorted, middle + 1, to));
+    }
+
+    static int compare(ElementStore store, int slot, int other) {
+        int result = Double.compare(store.size(slot), store.size(other));
+        return result != 0 ? result : Long.compare(store.id(slot), store.id(other));
+    }
+
+    private static int compare(ElementStore store, int slot, Node node) {
+        return slot == node.slot ? 0 : compare(store, slot, node.slot);
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static Node balance(Node node) {
+        int difference = height(node.left) - height(node.right);
+        if (difference > 1) {
+            Node left = node.left;
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left);
+            }
+            return rotateRight(node.with(left, node.right));
+        } else if (difference < -1) {
+            Node right = node.right;
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right);
+            }
+            return rotateLeft(node.with(node.left, right));
+        }
+        return node;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        return right.with(node.with(node.left, right.left), right.right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        return left.with(left.left, node.with(left.right, node.right));
+    }
+
+    static final class Node {
+        final int slot;
+        final Node left;
+        final Node right;
+        final int height;
+        final int count;
+
+        Node(int slot, Node left, Node right) {
+            this.slot = slot;
+            this.left = left;
+            this.right = right;
+            height = Math.max(height(left), height(right)) + 1;
+            count = count(left) + count(right) + 1;
+        }
+
+        Node with(Node left, Node right) {
+            return left == this.left && right == this.right ? this : new Node(slot, left, right);
+        }
+    }
+}
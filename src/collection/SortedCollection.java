@@ -0,0 +1,441 @@
+package collection;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public class SortedCollection extends AbstractCollection<CollectionElement> {
+    public enum Layout {
+        OBJECTS,
+        COLUMNAR,
+    }
+
+    private static final int COMPACT_THRESHOLD = 1024;
+    private static final int ELEMENT_BYTES = 120;
+
+    private volatile Snapshot current;
+    private ElementStore store;
+    private long nextId = 0;
+    private long idOffset = 0;
+    private long idStep = 1;
+    private volatile long bytes = 0;
+    private long maxElements = Long.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+    private EvictionPolicy eviction;
+    private final SlotIndex byId = new SlotIndex(slot -> Long.hashCode(store.id(slot)));
+    private final SlotIndex byValue = new SlotIndex(slot -> store.get(slot).hashCode());
+    private final Object lock = new Object();
+    private final List<CollectionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public SortedCollection() {
+        this(Layout.OBJECTS);
+    }
+
+    public SortedCollection(Layout layout) {
+        store = layout == Layout.COLUMNAR ? new ColumnarElementStore() : new ObjectElementStore();
+        current = new Snapshot(store, null, 0);
+    }
+
+    public void setIdSequence(long offset, long step) {
+        if (step < 1 || offset < 0 || offset >= step) {
+            throw new IllegalArgumentException("Id offset should be between 0 and step - 1");
+        }
+        synchronized (lock) {
+            idOffset = offset;
+            idStep = step;
+            nextId = alignId(nextId);
+        }
+    }
+
+    public void reserveIds(long id) {
+        synchronized (lock) {
+            nextId = Math.max(nextId, alignId(id));
+        }
+    }
+
+    public void setCapacity(long maxElements, long maxBytes, EvictionPolicy eviction) {
+        synchronized (lock) {
+            if (this.eviction != null) {
+                listeners.remove(this.eviction);
+            }
+            this.maxElements = maxElements > 0 ? maxElements : Long.MAX_VALUE;
+            this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+            this.eviction = eviction;
+            if (eviction != null) {
+                eviction.cleared();
+                current.forEach(eviction::added);
+                listeners.add(eviction);
+                evictOverflow();
+            }
+        }
+    }
+
+    public EvictionPolicy getEviction() {
+        return eviction;
+    }
+
+    public long getMaxElements() {
+        return maxElements;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void accessed(Collection<CollectionElement> elements) {
+        EvictionPolicy policy = eviction;
+        if (policy != null) {
+            elements.forEach(policy::accessed);
+        }
+    }
+
+    public void evict(Predicate<CollectionElement> filter) {
+        synchronized (lock) {
+            Snapshot.Node root = current.getRoot();
+            List<CollectionElement> victims = new ArrayList<>();
+            for (CollectionElement element : current) {
+                int slot = filter.test(element) ? slotById(element.getId()) : -1;
+                if (slot >= 0 && byId.remove(slot)) {
+                    root = unlink(root, slot);
+                    victims.add(element);
+                }
+            }
+            if (!victims.isEmpty()) {
+                evicted(root, victims);
+            }
+        }
+    }
+
+    public void removedEvicted(CollectionElement element) {
+        synchronized (lock) {
+            publish(current.getRoot());
+            listeners.forEach(l -> l.removedEvicted(element));
+        }
+    }
+
+    public void addListener(CollectionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CollectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    public long getVersion() {
+        return current.getVersion();
+    }
+
+    public CollectionElement get(long id) {
+        synchronized (lock) {
+            int slot = slotById(id);
+            return slot < 0 ? null : store.get(slot);
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof CollectionElement)) {
+            return false;
+        }
+        synchronized (lock) {
+            return slotByValue((CollectionElement) o) >= 0;
+        }
+    }
+
+    @Override
+    public boolean add(CollectionElement element) {
+        synchronized (lock) {
+            element.setId(nextId += idStep);
+            int slot = append(element);
+            publish(Snapshot.insert(store, current.getRoot(), slot));
+            CollectionElement stored = store.get(slot);
+            listeners.forEach(l -> l.added(stored));
+            evictOverflow();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends CollectionElement> elements) {
+        synchronized (lock) {
+            int from = store.slots();
+            for (CollectionElement element : elements) {
+                if (element.getId() <= 0 || slotById(element.getId()) >= 0) {
+                    element.setId(nextId += idStep);
+                } else {
+                    nextId = Math.max(nextId, alignId(element.getId()));
+                }
+                append(element);
+            }
+            int to = store.slots();
+
+            if (current.isEmpty()) {
+                publish(Snapshot.build(sortedSlots(from, to), 0, to - from));
+            } else {
+                Snapshot.Node root = current.getRoot();
+                for (int slot = from; slot < to; slot++) {
+                    root = Snapshot.insert(store, root, slot);
+                }
+                publish(root);
+            }
+            for (int slot = from; slot < to; slot++) {
+                CollectionElement stored = store.get(slot);
+                listeners.forEach(l -> l.added(stored));
+            }
+            evictOverflow();
+            return to > from;
+        }
+    }
+
+    public void replaceAll(Collection<? extends CollectionElement> elements) {
+        synchronized (lock) {
+            clear();
+            addAll(elements);
+        }
+    }
+
+    public <T> T atomically(Supplier<T> action) {
+        synchronized (lock) {
+            return action.get();
+        }
+    }
+
+    public Snapshot snapshot(Runnable whileLocked) {
+        synchronized (lock) {
+            whileLocked.run();
+            return current;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof CollectionElement)) {
+            return false;
+        }
+
+        synchronized (lock) {
+            return removed(slotByValue((CollectionElement) o)) != null;
+        }
+    }
+
+    public CollectionElement removeById(long id) {
+        synchronized (lock) {
+            return removed(slotById(id));
+        }
+    }
+
+    public CollectionElement pollFirst() {
+        synchronized (lock) {
+            Snapshot.Node node = Snapshot.firstNode(current.getRoot());
+            return node == null ? null : removed(node.slot);
+        }
+    }
+
+    public CollectionElement pollLast() {
+        synchronized (lock) {
+            Snapshot.Node node = Snapshot.lastNode(current.getRoot());
+            return node == null ? null : removed(node.slot);
+        }
+    }
+
+    public CollectionElement first() {
+        return current.first();
+    }
+
+    public CollectionElement last() {
+        return current.last();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            store = store.empty();
+            byId.clear();
+            byValue.clear();
+            bytes = 0;
+            publish(null);
+            listeners.forEach(CollectionListener::cleared);
+        }
+    }
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.isEmpty();
+    }
+
+    @Override
+    public Iterator<CollectionElement> iterator() {
+        Iterator<CollectionElement> elements = current.iterator();
+        return new Iterator<CollectionElement>() {
+            private CollectionElement last;
+
+            @Override
+            public boolean hasNext() {
+                return elements.hasNext();
+            }
+
+            @Override
+            public CollectionElement next() {
+                last = elements.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                removeById(last.getId());
+                last = null;
+            }
+        };
+    }
+
+    private long alignId(long id) {
+        return id - Math.floorMod(id - idOffset, idStep);
+    }
+
+    private int append(CollectionElement element) {
+        bytes += estimateBytes(element);
+        int slot = store.append(element);
+        byId.add(slot);
+        byValue.add(slot);
+        return slot;
+    }
+
+    private int slotById(long id) {
+        return byId.find(Long.hashCode(id), slot -> store.id(slot) == id);
+    }
+
+    private int slotByValue(CollectionElement element) {
+        return byValue.find(element.hashCode(), slot -> store.get(slot).equals(element));
+    }
+
+    private int[] sortedSlots(int from, int to) {
+        int[] slots = new int[to - from];
+        boolean sorted = true;
+        for (int slot = from; slot < to; slot++) {
+            slots[slot - from] = slot;
+            sorted &= slot == from || Snapshot.compare(store, slot - 1, slot) < 0;
+        }
+        if (sorted) {
+            return slots;
+        }
+
+        Integer[] boxed = new Integer[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            boxed[i] = slots[i];
+        }
+        Arrays.sort(boxed, (a, b) -> Snapshot.compare(store, a, b));
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = boxed[i];
+        }
+        return slots;
+    }
+
+    private void publish(Snapshot.Node root) {
+        current = new Snapshot(store, root, current.getVersion() + 1);
+    }
+
+    private CollectionElement removed(int slot) {
+        CollectionElement element = detach(slot);
+        if (element == null) {
+            return null;
+        }
+        listeners.forEach(l -> l.removed(element));
+        compactIfSparse();
+        return element;
+    }
+
+    private CollectionElement detach(int slot) {
+        if (slot < 0 || !byId.remove(slot)) {
+            return null;
+        }
+
+        publish(unlink(current.getRoot(), slot));
+        return store.get(slot);
+    }
+
+    private Snapshot.Node unlink(Snapshot.Node root, int slot) {
+        byValue.remove(slot);
+        bytes -= estimateBytes(store.get(slot));
+        return Snapshot.delete(store, root, slot);
+    }
+
+    private void evictOverflow() {
+        if (eviction == null || current.size() <= maxElements && bytes <= maxBytes) {
+            return;
+        }
+
+        long targetElements = maxElements - maxElements / 16;
+        long targetBytes = maxBytes - maxBytes / 16;
+        Snapshot remaining = current;
+        List<CollectionElement> victims = new ArrayList<>();
+        while (remaining.size() > targetElements || bytes > targetBytes) {
+            long id = eviction.victim(remaining);
+            int slot = id < 0 ? -1 : slotById(id);
+            if (slot < 0 || !byId.remove(slot)) {
+                break;
+            }
+            remaining = new Snapshot(store, unlink(remaining.getRoot(), slot), remaining.getVersion());
+            CollectionElement victim = store.get(slot);
+            eviction.removed(victim);
+            victims.add(victim);
+        }
+        if (!victims.isEmpty()) {
+            evicted(remaining.getRoot(), victims);
+        }
+    }
+
+    private void evicted(Snapshot.Node root, List<CollectionElement> victims) {
+        listeners.forEach(l -> l.evicting(victims));
+        publish(root);
+        listeners.forEach(l -> l.evicted(victims));
+        compactIfSparse();
+    }
+
+    private static long estimateBytes(CollectionElement element) {
+        String name = element.getName();
+        return ELEMENT_BYTES + 2L * (name == null ? 0 : name.length());
+    }
+
+    private void compactIfSparse() {
+        int live = current.size();
+        int dead = store.slots() - live;
+        if (dead < COMPACT_THRESHOLD || dead < live) {
+            return;
+        }
+
+        Snapshot old = current;
+        ElementStore compacted = store.empty();
+        int[] slots = new int[live];
+        Iterator<CollectionElement> elements = old.iterator();
+        for (int i = 0; i < live; i++) {
+            slots[i] = compacted.append(elements.next());
+        }
+
+        store = compacted;
+        byId.clear();
+        byValue.clear();
+        for (int slot : slots) {
+            byId.add(slot);
+            byValue.add(slot);
+        }
+        current = new Snapshot(store, Snapshot.build(slots, 0, live), old.getVersion());
+        listeners.forEach(l -> l.relocated(current));
+    }
+}
@@ -0,0 +1,218 @@
+package collection;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SpatialIndex implements CollectionListener {
+    private final double cellSize;
+    private final Map<Long, List<CollectionElement>> cells = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size = 0;
+
+    public SpatialIndex(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size should be positive");
+        }
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void added(CollectionElement element) {
+        Position position = element.getPosition();
+        if (position == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            cells.computeIfAbsent(key(cell(position.getX()), cell(position.getY())), k -> new ArrayList<>(4))
+                    .add(element);
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(CollectionElement element) {
+        Position position = element.getPosition();
+        if (position == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            long key = key(cell(position.getX()), cell(position.getY()));
+            List<CollectionElement> cell = cells.get(key);
+            if (cell == null) {
+                return;
+            }
+            for (int i = 0; i < cell.size(); i++) {
+                if (cell.get(i).getId() == element.getId()) {
+                    cell.set(i, cell.get(cell.size() - 1));
+                    cell.remove(cell.size() - 1);
+                    size--;
+                    break;
+                }
+            }
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cleared() {
+        lock.writeLock().lock();
+        try {
+            cells.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<CollectionElement> within(double minX, double minY, double maxX, double maxY) {
+        List<CollectionElement> result = new ArrayList<>();
+        if (minX > maxX || minY > maxY) {
+            return result;
+        }
+
+        lock.readLock().lock();
+        try {
+            long fromX = cell(minX);
+            long toX = cell(maxX);
+            long fromY = cell(minY);
+            long toY = cell(maxY);
+            if ((double) (toX - fromX + 1) * (toY - fromY + 1) > cells.size()) {
+                for (List<CollectionElement> cell : cells.values()) {
+                    collectWithin(cell, minX, minY, maxX, maxY, result);
+                }
+            } else {
+                for (long x = fromX; x <= toX; x++) {
+                    for (long y = fromY; y <= toY; y++) {
+                        List<CollectionElement> cell = cells.get(key(x, y));
+                        if (cell != null) {
+                            collectWithin(cell, minX, minY, maxX, maxY, result);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public List<CollectionElement> radius(double x, double y, double r) {
+        List<CollectionElement> result = new ArrayList<>();
+        for (CollectionElement element : within(x - r, y - r, x + r, y + r)) {
+            if (distanceSquared(element, x, y) <= r * r) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    public List<CollectionElement> nearest(double x, double y, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        Comparator<CollectionElement> byDistance = Comparator.comparingDouble(element -> distanceSquared(element, x, y));
+        PriorityQueue<CollectionElement> best = new PriorityQueue<>(Math.min(k, 1024) + 1, byDistance.reversed());
+        lock.readLock().lock();
+        try {
+            long centerX = cell(x);
+            long centerY = cell(y);
+            long visited = 0;
+            for (long ring = 0; ; ring++) {
+                if (visited > cells.size()) {
+                    best.clear();
+                    for (List<CollectionElement> cell : cells.values()) {
+                        collectNearest(cell, k, best, byDistance);
+                    }
+                    break;
+                }
+
+                for (long cx = centerX - ring; cx <= centerX + ring; cx++) {
+                    boolean edge = cx == centerX - ring || cx == centerX + ring;
+                    for (long cy = centerY - ring; cy <= centerY + ring; cy += edge ? 1 : 2 * ring) {
+                        List<CollectionElement> cell = cells.get(key(cx, cy));
+                        if (cell != null) {
+                            collectNearest(cell, k, best, byDistance);
+                        }
+                        visited++;
+                        if (ring == 0) {
+                            break;
+                        }
+                    }
+                }
+
+                if (best.size() == k || best.size() == size) {
+                    double reach = ring * cellSize;
+                    if (best.size() == size || distanceSquared(best.peek(), x, y) <= reach * reach) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<CollectionElement> result = new ArrayList<>(best);
+        result.sort(byDistance);
+        return result;
+    }
+
+    private static void collectWithin(List<CollectionElement> cell, double minX, double minY, double maxX, double maxY,
+                                      List<CollectionElement> result) {
+        for (CollectionElement element : cell) {
+            Position position = element.getPosition();
+            if (position.getX() >= minX && position.getX() <= maxX
+                    && position.getY() >= minY && position.getY() <= maxY) {
+                result.add(element);
+            }
+        }
+    }
+
+    private static void collectNearest(List<CollectionElement> cell, int k, PriorityQueue<CollectionElement> best,
+                                       Comparator<CollectionElement> byDistance) {
+        for (CollectionElement element : cell) {
+            if (best.size() < k) {
+                best.add(element);
+            } else if (byDistance.compare(element, best.peek()) < 0) {
+                best.poll();
+                best.add(element);
+            }
+        }
+    }
+
+    private static double distanceSquared(CollectionElement element, double x, double y) {
+        Position position = element.getPosition();
+        double dx = position.getX() - x;
+        double dy = position.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private long cell(double coordinate) {
+        double cell = Math.floor(coordinate / cellSize);
+        return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cell));
+    }
+
+    private static long key(long x, long y) {
+        return x << 32 | y & 0xFFFFFFFFL;
+    }
+}
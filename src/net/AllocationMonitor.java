@@ -0,0 +1,76 @@
+package net;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class AllocationMonitor {
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Map<Long, Long> allocatedAtStart = new ConcurrentHashMap<>();
+    private final LongAdder datagrams = new LongAdder();
+
+    public void attach(Thread thread) {
+        allocatedAtStart.put(thread.getId(), threadAllocatedBytes(thread.getId()));
+    }
+
+    public void datagramReceived() {
+        datagrams.increment();
+    }
+
+    public long getDatagrams() {
+        return datagrams.sum();
+    }
+
+    public long getAllocatedBytes() {
+        if (allocatedAtStart.isEmpty()) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : allocatedAtStart.entrySet()) {
+            long allocated = threadAllocatedBytes(entry.getKey());
+            if (allocated < 0 || entry.getValue() < 0) {
+                return -1;
+            }
+            total += allocated - entry.getValue();
+        }
+        return total;
+    }
+
+    public long getAllocatedBytesPerDatagram() {
+        long allocated = getAllocatedBytes();
+        long count = getDatagrams();
+        return allocated < 0 || count == 0 ? -1 : allocated / count;
+    }
+
+    public long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    public long getGcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(gc.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    private long threadAllocatedBytes(long threadId) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("receive loops: %d datagrams, %d bytes allocated (%d per datagram); gc: %d collections, %d ms",
+                getDatagrams(), getAllocatedBytes(), getAllocatedBytesPerDatagram(), getGcCount(), getGcTimeMillis());
+    }
+}
@@ -0,0 +1,46 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Batch implements Serializable {
+    public static class Operation implements Serializable {
+        private boolean add;
+        private CollectionElement element;
+
+        public Operation(boolean add, CollectionElement element) {
+            this.add = add;
+            this.element = element;
+        }
+
+        public boolean isAdd() {
+            return add;
+        }
+
+        public CollectionElement getElement() {
+            return element;
+        }
+    }
+
+    private List<Operation> operations;
+
+    public Batch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    public Batch() {
+        this(new ArrayList<>());
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ operations: %d }", operations.size());
+    }
+}
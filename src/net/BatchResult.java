@@ -0,0 +1,26 @@
+package net;
+
+import java.io.Serializable;
+
+public class BatchResult implements Serializable {
+    private int added;
+    private int removed;
+
+    public BatchResult(int added, int removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ added: %d; removed: %d }", added, removed);
+    }
+}
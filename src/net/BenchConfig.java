@@ -0,0 +1,220 @@
+package net;
+
+import cli.InvalidCommandLineArgumentException;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class BenchConfig {
+    private InetAddress address;
+    private int port;
+    private MessageCodec codec = Codecs.BINARY;
+    private int clients = 8;
+    private int rate = 0;
+    private int durationSeconds = 10;
+    private int warmupSeconds = 2;
+    private int showLimit = 100;
+    private Map<Message.Head, Integer> mix = new EnumMap<>(Message.Head.class);
+    private String format = "csv";
+    private File output;
+
+    public BenchConfig(InetAddress address, int port) {
+        this.address = address;
+        this.port = port;
+        mix.put(Message.Head.ADD, 40);
+        mix.put(Message.Head.REMOVE, 10);
+        mix.put(Message.Head.REMOVE_LAST, 10);
+        mix.put(Message.Head.SHOW, 10);
+        mix.put(Message.Head.INFO, 30);
+    }
+
+    public static BenchConfig fromArgs(String[] args) throws InvalidCommandLineArgumentException {
+        if (args.length < 3) {
+            throw new InvalidCommandLineArgumentException("You should specify IP and port to connect");
+        }
+
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(args[1]);
+        } catch (UnknownHostException e) {
+            throw new InvalidCommandLineArgumentException("Unknown host " + args[1]);
+        }
+
+        int port = number("port", args[2], 1024);
+        if (port > 65_535) {
+            throw new InvalidCommandLineArgumentException("Port should be between 1024 and 65 535");
+        }
+
+        BenchConfig config = new BenchConfig(address, port);
+        MessageCodec codec = Codecs.forName(System.getenv("LAB6_CODEC"));
+        if (codec == null) {
+            throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_CODEC' should be 'binary' or 'serialization'");
+        }
+        config.setCodec(codec);
+
+        for (int i = 3; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new InvalidCommandLineArgumentException("Option '" + args[i] + "' needs a value");
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--clients":
+                    config.setClients(number("clients", value, 1));
+                    break;
+                case "--rate":
+                    config.setRate(number("rate", value, 0));
+                    break;
+                case "--duration":
+                    config.setDurationSeconds(number("duration", value, 1));
+                    break;
+                case "--warmup":
+                    config.setWarmupSeconds(number("warmup", value, 0));
+                    break;
+                case "--show-limit":
+                    config.setShowLimit(number("show-limit", value, 1));
+                    break;
+                case "--mix":
+                    config.setMix(mix(value));
+                    break;
+                case "--format":
+                    if (!"csv".equals(value) && !"json".equals(value)) {
+                        throw new InvalidCommandLineArgumentException("Format should be 'csv' or 'json'");
+                    }
+                    config.setFormat(value);
+                    break;
+                case "--output":
+                    config.setOutput(new File(value));
+                    break;
+                default:
+                    throw new InvalidCommandLineArgumentException("Unknown option '" + args[i] + "'");
+            }
+        }
+        return config;
+    }
+
+    private static int number(String name, String value, int min) throws InvalidCommandLineArgumentException {
+        int result;
+        try {
+            result = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidCommandLineArgumentException("'" + name + "' should be a number");
+        }
+        if (result < min) {
+            throw new InvalidCommandLineArgumentException("'" + name + "' should be at least " + min);
+        }
+        return result;
+    }
+
+    private static Map<Message.Head, Integer> mix(String value) throws InvalidCommandLineArgumentException {
+        Map<Message.Head, Integer> mix = new EnumMap<>(Message.Head.class);
+        for (String part : value.split(",")) {
+            String[] pair = part.split("=");
+            if (pair.length != 2) {
+                throw new InvalidCommandLineArgumentException("Mix should look like 'add=40,info=60'");
+            }
+
+            Message.Head head;
+            try {
+                head = Message.Head.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidCommandLineArgumentException("Unknown operation '" + pair[0].trim() + "'");
+            }
+            if (!LoadGenerator.supports(head)) {
+                throw new InvalidCommandLineArgumentException(
+                        "Mix can only contain add, remove, remove_last, show and info");
+            }
+            int weight = number(pair[0].trim(), pair[1], 0);
+            if (weight > 0) {
+                mix.put(head, weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new InvalidCommandLineArgumentException("Mix should contain at least one operation");
+        }
+        return mix;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getShowLimit() {
+        return showLimit;
+    }
+
+    public Map<Message.Head, Integer> getMix() {
+        return mix;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public void setCodec(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public void setClients(int clients) {
+        this.clients = clients;
+    }
+
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public void setWarmupSeconds(int warmupSeconds) {
+        this.warmupSeconds = warmupSeconds;
+    }
+
+    public void setShowLimit(int showLimit) {
+        this.showLimit = showLimit;
+    }
+
+    public void setMix(Map<Message.Head, Integer> mix) {
+        this.mix = mix;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public void setOutput(File output) {
+        this.output = output;
+    }
+}
@@ -0,0 +1,479 @@
+package net;
+
+import collection.CollectionElement;
+import collection.Position;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class BinaryCodec implements MessageCodec {
+    static final byte MAGIC_V1 = (byte) 0xB1;
+    static final byte MAGIC = (byte) 0xB2;
+    static final int SESSION_OFFSET = 3;
+    static final int ID_OFFSET = SESSION_OFFSET + Long.BYTES;
+
+    private static final byte FLAG_REQUEST = 1;
+    private static final byte FLAG_POSITION = 1;
+    private static final byte FLAG_ID = 2;
+
+    private static final byte BODY_NULL = 0;
+    private static final byte BODY_STRING = 1;
+    private static final byte BODY_ELEMENT = 2;
+    private static final byte BODY_ELEMENT_LIST = 3;
+    private static final byte BODY_SHOW_REQUEST = 4;
+    private static final byte BODY_FRAGMENT = 5;
+    private static final byte BODY_BATCH = 6;
+    private static final byte BODY_BATCH_RESULT = 7;
+    private static final byte BODY_IMPORT_CHUNK = 8;
+    private static final byte BODY_IMPORT_PROGRESS = 9;
+    private static final byte BODY_QUERY = 10;
+    private static final byte BODY_SPATIAL_QUERY = 11;
+    private static final byte BODY_LONG = 12;
+    private static final byte BODY_CHANGE_SET = 13;
+    private static final ChangeSet.Kind[] KINDS = ChangeSet.Kind.values();
+    private static final Query.Order[] ORDERS = Query.Order.values();
+
+    private static final Message.Head[] HEADS = Message.Head.values();
+
+    private final byte magic;
+
+    public BinaryCodec() {
+        this(MAGIC);
+    }
+
+    BinaryCodec(byte magic) {
+        this.magic = magic;
+    }
+
+    @Override
+    public String getName() {
+        return magic == MAGIC ? "binary" : "binary-v1";
+    }
+
+    @Override
+    public boolean supports(Message message) {
+        Object body = message.getBody();
+        if (body == null || body instanceof String || isElement(body)
+                || body instanceof ShowRequest || body instanceof BatchResult
+                || body instanceof ImportChunk || body instanceof ImportProgress || body instanceof Query
+                || body instanceof SpatialQuery || body instanceof Long) {
+            return true;
+        }
+        if (body instanceof Batch) {
+            for (Batch.Operation operation : ((Batch) body).getOperations()) {
+                if (!isElement(operation.getElement())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (body instanceof Fragment) {
+            return isElementList(((Fragment) body).getElements());
+        }
+        if (body instanceof ChangeSet) {
+            for (ChangeSet.Change change : ((ChangeSet) body).getChanges()) {
+                if (change.getElement() != null && !isElement(change.getElement())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return body instanceof List && isElementList((List<?>) body);
+    }
+
+    @Override
+    public void encode(Message message, ByteBuffer buffer) throws IOException {
+        if (!supports(message)) {
+            throw new IOException("Unsupported message body: " + message.getBody().getClass().getTypeName());
+        }
+
+        try {
+            buffer.put(magic);
+            buffer.put((byte) message.getHead().ordinal());
+            buffer.put(message.isRequest() ? FLAG_REQUEST : 0);
+            if (magic == MAGIC) {
+                buffer.putLong(message.getSession());
+                buffer.putLong(message.getId());
+            }
+            buffer.putLong(message.getCreationDate().getTime());
+            writeBody(message.getBody(), buffer);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message is too large", e);
+        }
+    }
+
+    static boolean isEncoded(ByteBuffer buffer) {
+        return buffer.remaining() > ID_OFFSET + Long.BYTES && buffer.get(buffer.position()) == MAGIC;
+    }
+
+    static void readdress(ByteBuffer buffer, long session, long id) {
+        buffer.putLong(buffer.position() + SESSION_OFFSET, session);
+        buffer.putLong(buffer.position() + ID_OFFSET, id);
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) throws IOException {
+        try {
+            byte magic = buffer.get();
+            if (magic != MAGIC && magic != MAGIC_V1) {
+                throw new IOException("Unsupported binary codec version");
+            }
+
+            int headTag = buffer.get() & 0xFF;
+            if (headTag >= HEADS.length) {
+                throw new IOException("Unknown message head " + headTag);
+            }
+
+            boolean isRequest = (buffer.get() & FLAG_REQUEST) != 0;
+            long session = magic == MAGIC ? buffer.getLong() : 0;
+            long id = magic == MAGIC ? buffer.getLong() : 0;
+            Date creationDate = new Date(buffer.getLong());
+            return new Message(isRequest, HEADS[headTag], readBody(buffer), creationDate, session, id);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed message", e);
+        }
+    }
+
+    private static boolean isElement(Object o) {
+        return o instanceof CollectionElement;
+    }
+
+    private static boolean isElementList(List<?> list) {
+        for (Object o : list) {
+            if (!isElement(o)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeBody(Object body, ByteBuffer buffer) {
+        if (body == null) {
+            buffer.put(BODY_NULL);
+        } else if (body instanceof String) {
+            buffer.put(BODY_STRING);
+            writeString((String) body, buffer);
+        } else if (body instanceof CollectionElement) {
+            buffer.put(BODY_ELEMENT);
+            writeElement((CollectionElement) body, buffer);
+        } else if (body instanceof ShowRequest) {
+            ShowRequest request = (ShowRequest) body;
+            buffer.put(BODY_SHOW_REQUEST);
+            buffer.putLong(request.getOffset());
+            buffer.putInt(request.getLimit());
+            buffer.putLong(request.getSequenceId());
+            writeVarInt(request.getMissing().length, buffer);
+            for (int index : request.getMissing()) {
+                writeVarInt(index, buffer);
+            }
+            buffer.putLong(request.getVersion());
+        } else if (body instanceof Fragment) {
+            Fragment fragment = (Fragment) body;
+            buffer.put(BODY_FRAGMENT);
+            buffer.putLong(fragment.getSequenceId());
+            buffer.putLong(fragment.getVersion());
+            writeVarInt(fragment.getIndex(), buffer);
+            writeVarInt(fragment.getCount(), buffer);
+            writeElementList(fragment.getElements(), buffer);
+        } else if (body instanceof Batch) {
+            List<Batch.Operation> operations = ((Batch) body).getOperations();
+            buffer.put(BODY_BATCH);
+            writeVarInt(operations.size(), buffer);
+            for (Batch.Operation operation : operations) {
+                buffer.put(operation.isAdd() ? (byte) 1 : 0);
+                writeElement(operation.getElement(), buffer);
+            }
+        } else if (body instanceof BatchResult) {
+            BatchResult result = (BatchResult) body;
+            buffer.put(BODY_BATCH_RESULT);
+            writeVarInt(result.getAdded(), buffer);
+            writeVarInt(result.getRemoved(), buffer);
+        } else if (body instanceof ImportChunk) {
+            ImportChunk chunk = (ImportChunk) body;
+            buffer.put(BODY_IMPORT_CHUNK);
+            buffer.putLong(chunk.getImportId());
+            writeVarInt(chunk.getIndex(), buffer);
+            buffer.put(chunk.isLast() ? (byte) 1 : 0);
+            writeVarInt(chunk.getData().length, buffer);
+            buffer.put(chunk.getData());
+        } else if (body instanceof ImportProgress) {
+            ImportProgress progress = (ImportProgress) body;
+            buffer.put(BODY_IMPORT_PROGRESS);
+            buffer.putLong(progress.getImportId());
+            writeVarInt(progress.getChunks(), buffer);
+            writeVarInt(progress.getElements(), buffer);
+            buffer.put(progress.isDone() ? (byte) 1 : 0);
+            writeString(progress.getError(), buffer);
+        } else if (body instanceof ChangeSet) {
+            List<ChangeSet.Change> changes = ((ChangeSet) body).getChanges();
+            buffer.put(BODY_CHANGE_SET);
+            buffer.putLong(((ChangeSet) body).getLatest());
+            writeVarInt(changes.size(), buffer);
+            for (ChangeSet.Change change : changes) {
+                buffer.put((byte) change.getKind().ordinal());
+                buffer.putLong(change.getSequence());
+                buffer.putLong(change.getVersion());
+                if (change.getKind() != ChangeSet.Kind.RESET) {
+                    writeElement(change.getElement(), buffer);
+                }
+            }
+        } else if (body instanceof Long) {
+            buffer.put(BODY_LONG);
+            buffer.putLong((Long) body);
+        } else if (body instanceof Query) {
+            buffer.put(BODY_QUERY);
+            writeQuery((Query) body, buffer);
+        } else if (body instanceof SpatialQuery) {
+            SpatialQuery query = (SpatialQuery) body;
+            buffer.put(BODY_SPATIAL_QUERY);
+            buffer.putDouble(query.getMinX());
+            buffer.putDouble(query.getMinY());
+            buffer.putDouble(query.getMaxX());
+            buffer.putDouble(query.getMaxY());
+            buffer.putDouble(query.getRadius());
+            writeVarInt(query.getCount(), buffer);
+        } else {
+            buffer.put(BODY_ELEMENT_LIST);
+            writeElementList((List<?>) body, buffer);
+        }
+    }
+
+    private static void writeQuery(Query query, ByteBuffer buffer) {
+        Object[] fields = {query.getNameEquals(), query.getNamePrefix(), query.getMinSize(), query.getMaxSize(),
+                query.getMinX(), query.getMaxX(), query.getMinY(), query.getMaxY(),
+                query.getCreatedAfter(), query.getCreatedBefore()};
+        int present = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                present |= 1 << i;
+            }
+        }
+
+        writeVarInt(present, buffer);
+        for (Object field : fields) {
+            if (field instanceof String) {
+                writeString((String) field, buffer);
+            } else if (field instanceof Double) {
+                buffer.putDouble((Double) field);
+            } else if (field instanceof Long) {
+                buffer.putLong((Long) field);
+            }
+        }
+        buffer.put((byte) query.getOrder().ordinal());
+        writeVarInt(query.getLimit(), buffer);
+    }
+
+    private static Query readQuery(ByteBuffer buffer) throws IOException {
+        int present = readVarInt(buffer);
+        Query query = new Query();
+        query.setNameEquals((present & 1) != 0 ? readString(buffer) : null);
+        query.setNamePrefix((present & 2) != 0 ? readString(buffer) : null);
+        query.setSizeRange(readDouble(present, 2, buffer), readDouble(present, 3, buffer));
+        Double minX = readDouble(present, 4, buffer);
+        Double maxX = readDouble(present, 5, buffer);
+        Double minY = readDouble(present, 6, buffer);
+        Double maxY = readDouble(present, 7, buffer);
+        query.setBox(minX, minY, maxX, maxY);
+        Long createdAfter = (present & 1 << 8) != 0 ? buffer.getLong() : null;
+        Long createdBefore = (present & 1 << 9) != 0 ? buffer.getLong() : null;
+        query.setCreatedRange(createdAfter, createdBefore);
+        int order = buffer.get();
+        if (order < 0 || order >= ORDERS.length) {
+            throw new IOException("Unknown query order " + order);
+        }
+        query.setOrder(ORDERS[order]);
+        query.setLimit(readVarInt(buffer));
+        return query;
+    }
+
+    private static Double readDouble(int present, int bit, ByteBuffer buffer) {
+        return (present & 1 << bit) != 0 ? buffer.getDouble() : null;
+    }
+
+    private static void writeElementList(List<?> list, ByteBuffer buffer) {
+        writeVarInt(list.size(), buffer);
+        for (Object o : list) {
+            writeElement((CollectionElement) o, buffer);
+        }
+    }
+
+    private static List<CollectionElement> readElementList(ByteBuffer buffer) throws IOException {
+        int size = readVarInt(buffer);
+        List<CollectionElement> list = new ArrayList<>(Math.max(0, Math.min(size, buffer.remaining())));
+        for (int i = 0; i < size; i++) {
+            list.add(readElement(buffer));
+        }
+        return list;
+    }
+
+    private static Object readBody(ByteBuffer buffer) throws IOException {
+        byte tag = buffer.get();
+        switch (tag) {
+            case BODY_NULL:
+                return null;
+            case BODY_STRING:
+                return readString(buffer);
+            case BODY_ELEMENT:
+                return readElement(buffer);
+            case BODY_ELEMENT_LIST:
+                return readElementList(buffer);
+            case BODY_SHOW_REQUEST:
+                long offset = buffer.getLong();
+                int limit = buffer.getInt();
+                long sequenceId = buffer.getLong();
+                int[] missing = new int[Math.max(0, Math.min(readVarInt(buffer), buffer.remaining()))];
+                for (int i = 0; i < missing.length; i++) {
+                    missing[i] = readVarInt(buffer);
+                }
+                return new ShowRequest(offset, limit, sequenceId, missing, buffer.getLong());
+            case BODY_FRAGMENT:
+                long fragmentSequenceId = buffer.getLong();
+                long version = buffer.getLong();
+                int index = readVarInt(buffer);
+                int count = readVarInt(buffer);
+                return new Fragment(fragmentSequenceId, version, index, count, readElementList(buffer));
+            case BODY_BATCH:
+                int operationCount = readVarInt(buffer);
+                List<Batch.Operation> operations = new ArrayList<>(Math.max(0, Math.min(operationCount, buffer.remaining())));
+                for (int i = 0; i < operationCount; i++) {
+                    boolean add = buffer.get() != 0;
+                    operations.add(new Batch.Operation(add, readElement(buffer)));
+                }
+                return new Batch(operations);
+            case BODY_BATCH_RESULT:
+                return new BatchResult(readVarInt(buffer), readVarInt(buffer));
+            case BODY_IMPORT_CHUNK:
+                long importId = buffer.getLong();
+                int chunkIndex = readVarInt(buffer);
+                boolean last = buffer.get() != 0;
+                int length = readVarInt(buffer);
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Chunk length " + length + " exceeds message size");
+                }
+                byte[] data = new byte[length];
+                buffer.get(data);
+                return new ImportChunk(importId, chunkIndex, last, data);
+            case BODY_IMPORT_PROGRESS:
+                return new ImportProgress(buffer.getLong(), readVarInt(buffer), readVarInt(buffer),
+                        buffer.get() != 0, readString(buffer));
+            case BODY_CHANGE_SET:
+                long latest = buffer.getLong();
+                int changeCount = readVarInt(buffer);
+                List<ChangeSet.Change> changes = new ArrayList<>(Math.max(0, Math.min(changeCount, buffer.remaining())));
+                for (int i = 0; i < changeCount; i++) {
+                    int kindTag = buffer.get() & 0xFF;
+                    if (kindTag >= KINDS.length) {
+                        throw new IOException("Unknown change kind " + kindTag);
+                    }
+                    ChangeSet.Kind kind = KINDS[kindTag];
+                    long changeSequence = buffer.getLong();
+                    long changeVersion = buffer.getLong();
+                    CollectionElement element = kind == ChangeSet.Kind.RESET ? null : readElement(buffer);
+                    changes.add(new ChangeSet.Change(kind, changeSequence, changeVersion, element));
+                }
+                return new ChangeSet(changes, latest);
+            case BODY_LONG:
+                return buffer.getLong();
+            case BODY_QUERY:
+                return readQuery(buffer);
+            case BODY_SPATIAL_QUERY:
+                return new SpatialQuery(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(),
+                        buffer.getDouble(), buffer.getDouble(), readVarInt(buffer));
+            default:
+                throw new IOException("Unknown body tag " + tag);
+        }
+    }
+
+    public static int estimateSize(CollectionElement element) {
+        String name = element.getName();
+        return 72 + 3 * (name == null ? 0 : name.length());
+    }
+
+    public static void writeElement(CollectionElement element, ByteBuffer buffer) {
+        writeString(element.getName(), buffer);
+        buffer.putDouble(element.getSize());
+        Position position = element.getPosition();
+        buffer.put((byte) ((position == null ? 0 : FLAG_POSITION) | (element.getId() == 0 ? 0 : FLAG_ID)));
+        if (position != null) {
+            buffer.putDouble(position.getX());
+            buffer.putDouble(position.getY());
+        }
+        buffer.putLong(element.getCreationDate().getTime());
+        if (element.getId() != 0) {
+            buffer.putLong(element.getId());
+        }
+    }
+
+    public static CollectionElement readElement(ByteBuffer buffer) throws IOException {
+        String name = readString(buffer);
+        double size = buffer.getDouble();
+        byte flags = buffer.get();
+        Position position = null;
+        if ((flags & FLAG_POSITION) != 0) {
+            position = new Position(buffer.getDouble(), buffer.getDouble());
+        }
+        CollectionElement element = new CollectionElement(name, size, position, new Date(buffer.getLong()));
+        if ((flags & FLAG_ID) != 0) {
+            element.setId(buffer.getLong());
+        }
+        return element;
+    }
+
+    public static void writeString(String s, ByteBuffer buffer) {
+        if (s == null) {
+            writeVarInt(0, buffer);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1, buffer);
+        buffer.put(bytes);
+    }
+
+    public static String readString(ByteBuffer buffer) throws IOException {
+        int length = readVarInt(buffer) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("String length " + length + " exceeds message size");
+        }
+
+        String s;
+        if (buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    public static void writeVarInt(int value, ByteBuffer buffer) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,53 @@
+package net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public ByteBuffer acquire() {
+        acquired.incrementAndGet();
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public int getPooled() {
+        return buffers.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("buffers: %d acquired, %d allocated, %d pooled",
+                getAcquired(), getAllocated(), getPooled());
+    }
+}
@@ -0,0 +1,70 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChangeSet implements Serializable {
+    public enum Kind {
+        ADDED,
+        REMOVED,
+        RESET,
+    }
+
+    public static class Change implements Serializable {
+        private Kind kind;
+        private long sequence;
+        private long version;
+        private CollectionElement element;
+
+        public Change(Kind kind, long sequence, long version, CollectionElement element) {
+            this.kind = kind;
+            this.sequence = sequence;
+            this.version = version;
+            this.element = element;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public CollectionElement getElement() {
+            return element;
+        }
+    }
+
+    private List<Change> changes;
+    private long latest;
+
+    public ChangeSet(List<Change> changes, long latest) {
+        this.changes = changes;
+        this.latest = latest;
+    }
+
+    public ChangeSet(long latest) {
+        this(new ArrayList<>(), latest);
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public long getLatest() {
+        return latest;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d changes up to %d", changes.size(), latest);
+    }
+}
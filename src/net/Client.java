@@ -8,30 +8,62 @@ import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 
 import java.io.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Client implements Runnable, Closeable {
+    private static final int WINDOW = 64;
+    private static final int IMPORT_CHUNK = 0x8000;
+    private static final long RENEW_MILLIS = SubscriptionHub.LEASE_MILLIS / 3;
+
     private boolean shouldRun = true;
     private MessageProcessor messageProcessor = new MessageProcessor();
     private Gson gson = new Gson();
-    private DatagramSocket socket;
-    private InetAddress address;
-    private int port;
+    private Connection connection;
+    private ClientEngine engine;
+    private ShowRequest lastShow;
+    private ShowResult lastShowResult;
+    private volatile ClientMirror mirror;
+    private Timer renewal;
 
     public Client(String[] args) throws IOException, InvalidCommandLineArgumentException {
+        MessageCodec codec = Codecs.forName(System.getenv("LAB6_CODEC"));
+        if (codec == null) {
+            throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_CODEC' should be 'binary' or 'serialization'");
+        }
+
+        connection = ShardRouter.fromEnv(codec, WINDOW);
+        if (connection == null) {
+            engine = connect(args, codec);
+            connection = engine;
+            engine.setPushHandler(msg -> {
+                ClientMirror current = mirror;
+                if (current != null && msg.getBody() instanceof ChangeSet) {
+                    current.accept((ChangeSet) msg.getBody());
+                }
+            });
+        }
+
+        messageProcessor.setResponseProcessor(Message.Head.INFO, msg -> System.out.println(msg.getBody()));
+        messageProcessor.setResponseProcessor(Message.Head.STATS, msg -> System.out.println(msg.getBody()));
+    }
+
+    private static ClientEngine connect(String[] args, MessageCodec codec)
+            throws IOException, InvalidCommandLineArgumentException {
         if (args.length < 3) {
             throw new InvalidCommandLineArgumentException("You should specify IP and port to connect");
         }
 
-        address = InetAddress.getByName(args[1]);
+        InetAddress address = InetAddress.getByName(args[1]);
 
+        int port;
         try {
             port = Integer.parseInt(args[2]);
         } catch (NumberFormatException e) {
@@ -42,16 +74,7 @@ public class Client implements Runnable, Closeable {
             throw new InvalidCommandLineArgumentException("Port should be between 1024 and 65 535");
         }
 
-        socket = new DatagramSocket();
-        socket.setSoTimeout(2000);
-
-        messageProcessor.setResponseProcessor(Message.Head.INFO, msg -> System.out.println(msg.getBody()));
-        messageProcessor.setResponseProcessor(Message.Head.SHOW, msg -> {
-            if (msg.getBody() instanceof List) {
-                List list = (List) msg.getBody();
-                list.forEach(System.out::println);
-            }
-        });
+        return new ClientEngine(address, port, codec, WINDOW);
     }
 
     public void run() {
@@ -62,6 +85,8 @@ public class Client implements Runnable, Closeable {
                     line -> sendRequest(new Message(true, Message.Head.STOP, null)));
             cli.setCommand("info",
                     line -> sendRequest(new Message(true, Message.Head.INFO, null)));
+            cli.setCommand("stats",
+                    line -> sendRequest(new Message(true, Message.Head.STATS, null)));
             cli.setCommand("remove_first",
                     line -> sendRequest(new Message(true, Message.Head.REMOVE_FIRST, null)));
             cli.setCommand("remove_last",
@@ -70,14 +95,29 @@ public class Client implements Runnable, Closeable {
                     line -> sendRequest(messageWithElement(Message.Head.ADD, line)));
             cli.setCommand("remove",
                     line -> sendRequest(messageWithElement(Message.Head.REMOVE, line)));
-            cli.setCommand("show",
-                    line -> sendRequest(new Message(true, Message.Head.SHOW, null)));
+            cli.setCommand("remove_id", line -> {
+                try {
+                    sendRequest(new Message(true, Message.Head.REMOVE_ID, Long.parseLong(line.trim())));
+                } catch (NumberFormatException e) {
+                    System.err.println("Usage: remove_id <id>");
+                }
+            });
+            cli.setCommand("show", this::show);
+            cli.setCommand("watch", line -> watch());
+            cli.setCommand("unwatch", line -> unwatch());
+            cli.setCommand("query", this::query);
+            cli.setCommand("within", line -> spatial(Message.Head.WITHIN, line, 4,
+                    "Usage: within <minX> <minY> <maxX> <maxY>"));
+            cli.setCommand("radius", line -> spatial(Message.Head.RADIUS, line, 3,
+                    "Usage: radius <x> <y> <r>"));
+            cli.setCommand("nearest", line -> spatial(Message.Head.NEAREST, line, 3,
+                    "Usage: nearest <x> <y> <k>"));
             cli.setCommand("load",
                     line -> sendRequest(new Message(true, Message.Head.LOAD, null)));
             cli.setCommand("save",
                     line -> sendRequest(new Message(true, Message.Head.SAVE, null)));
-            cli.setCommand("import",
-                    line -> sendRequest(importMessage(line)));
+            cli.setCommand("import", this::importFile);
+            cli.setCommand("batch", this::batch);
 
             while (shouldRun) {
                 try {
@@ -88,12 +128,16 @@ public class Client implements Runnable, Closeable {
                     shouldRun = false;
                 }
             }
+            connection.drain();
         }
     }
 
     @Override
     public void close() {
-        socket.close();
+        if (renewal != null) {
+            renewal.cancel();
+        }
+        connection.close();
     }
 
     private void sendRequest(Message message) {
@@ -101,49 +145,251 @@ public class Client implements Runnable, Closeable {
             return;
         }
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        try (ObjectOutputStream oo = new ObjectOutputStream(outputStream)) {
-            oo.writeObject(message);
-        } catch (IOException ignored) {
+        connection.request(message).whenComplete((response, e) -> {
+            if (e != null) {
+                System.err.println("Could not get response from server");
+            } else if (!messageProcessor.hasResponseProcessor(response.getHead()) && response.getBody() instanceof String) {
+                System.err.println(response.getBody());
+            } else {
+                messageProcessor.process(response);
+            }
+        });
+    }
+
+    private synchronized void watch() {
+        if (engine == null) {
+            System.err.println("Watch is not supported for a sharded cluster");
+            return;
+        }
+        if (mirror != null) {
+            System.out.println(mirror);
+            return;
         }
 
-        byte[] sendBytes = outputStream.toByteArray();
-        DatagramPacket sendPacket = new DatagramPacket(sendBytes, sendBytes.length, address, port);
+        ClientMirror watched = new ClientMirror(engine);
+        mirror = watched;
+        renewal = new Timer("renewal", true);
+        renewal.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                subscribe(watched);
+            }
+        }, 0, RENEW_MILLIS);
+    }
 
+    private void subscribe(ClientMirror watched) {
+        engine.request(new Message(true, Message.Head.SUBSCRIBE, null)).whenComplete((response, e) -> {
+            if (e != null) {
+                System.err.println("Could not subscribe to collection changes");
+            } else if (response.getBody() instanceof Long && mirror == watched) {
+                watched.subscribed((Long) response.getBody());
+            }
+        });
+    }
 
-        try {
-            socket.send(sendPacket);
-        } catch (IOException e) {
-            System.err.println("Could not send request to server");
+    private synchronized void unwatch() {
+        if (mirror == null) {
             return;
         }
+        renewal.cancel();
+        renewal = null;
+        mirror = null;
+        sendRequest(new Message(true, Message.Head.UNSUBSCRIBE, null));
+    }
 
-        if (!messageProcessor.hasResponseProcessor(message.getHead())) {
+    private void show(String line) {
+        ShowRequest request = showRequest(line);
+        if (request == null) {
             return;
         }
 
-        byte[] receiveBytes = new byte[0x10000];
-        DatagramPacket receivePacket = new DatagramPacket(receiveBytes, receiveBytes.length);
+        ClientMirror watched = mirror;
+        if (watched != null && watched.isSynced()) {
+            watched.slice(request.getOffset(), request.getLimit()).forEach(System.out::println);
+            return;
+        }
 
-        try {
-            socket.receive(receivePacket);
+        ShowResult cached = cachedShow(request);
+        if (cached != null) {
+            request = new ShowRequest(request.getOffset(), request.getLimit(), cached.getVersion());
+        }
+        ShowRequest sent = request;
+        connection.show(request).whenComplete((result, e) -> {
+            if (e != null) {
+                System.err.println("Could not get response from server");
+                return;
+            }
 
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(receiveBytes);
-            try (ObjectInputStream oi = new ObjectInputStream(inputStream)) {
-                Object obj = oi.readObject();
-                if (obj instanceof Message) {
-                    messageProcessor.process((Message) obj);
+            ShowResult shown = result;
+            synchronized (this) {
+                if (result.isModified()) {
+                    lastShow = sent;
+                    lastShowResult = result;
+                } else if (cached != null && cached.getVersion() == result.getVersion()) {
+                    shown = cached;
                 }
-            } catch (ClassNotFoundException ignored) {
             }
-        } catch (IOException e) {
-            System.err.println("Could not get response from server");
+            if (shown.isModified()) {
+                shown.getElements().forEach(System.out::println);
+            }
+        });
+    }
+
+    private void batch(String line) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(new File(line.trim()).toPath(), StandardCharsets.UTF_8)) {
+            List<Batch.Operation> operations = new ArrayList<>();
+            int bytes = 0;
+            String operationLine;
+            int lineNumber = 0;
+            while ((operationLine = reader.readLine()) != null) {
+                lineNumber++;
+                Batch.Operation operation = batchOperation(operationLine.trim());
+                if (operation == null) {
+                    if (!operationLine.trim().isEmpty()) {
+                        System.err.println("Could not parse line " + lineNumber);
+                    }
+                    continue;
+                }
+
+                int operationBytes = BinaryCodec.estimateSize(operation.getElement()) + 1;
+                if (!operations.isEmpty() && bytes + operationBytes > Fragment.BUDGET) {
+                    futures.add(connection.request(new Message(true, Message.Head.BATCH, new Batch(operations))));
+                    operations = new ArrayList<>();
+                    bytes = 0;
+                }
+                operations.add(operation);
+                bytes += operationBytes;
+            }
+            if (!operations.isEmpty()) {
+                futures.add(connection.request(new Message(true, Message.Head.BATCH, new Batch(operations))));
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Could not read file: " + e.getMessage());
+        }
+
+        int added = 0;
+        int removed = 0;
+        int failed = 0;
+        for (CompletableFuture<Message> future : futures) {
+            try {
+                Object body = future.join().getBody();
+                if (body instanceof BatchResult) {
+                    added += ((BatchResult) body).getAdded();
+                    removed += ((BatchResult) body).getRemoved();
+                }
+            } catch (CompletionException e) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            System.err.printf("Could not get response from server for %d of %d batches%n", failed, futures.size());
+        }
+        System.out.printf("Added %d, removed %d in %d batches (%d ms)%n",
+                added, removed, futures.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Batch.Operation batchOperation(String line) {
+        boolean add = true;
+        if (line.startsWith("add ")) {
+            line = line.substring(4);
+        } else if (line.startsWith("remove ")) {
+            add = false;
+            line = line.substring(7);
+        }
+
+        try {
+            CollectionElement element = gson.fromJson(line, CollectionElement.class);
+            return element == null || !element.isValid() ? null : new Batch.Operation(add, element);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void query(String line) {
+        Query query;
+        try {
+            query = line.trim().isEmpty() ? new Query() : gson.fromJson(line, Query.class);
+        } catch (JsonParseException e) {
+            System.err.println("Could not parse JSON object");
+            return;
+        }
+
+        connection.query(query).whenComplete((result, e) -> {
+            if (e != null) {
+                System.err.println("Could not get response from server");
+            } else {
+                result.getElements().forEach(System.out::println);
+            }
+        });
+    }
+
+    private void spatial(Message.Head head, String line, int arguments, String usage) {
+        String[] words = line.trim().split("\\s+");
+        SpatialQuery query;
+        try {
+            if (words.length != arguments) {
+                throw new NumberFormatException();
+            }
+            double[] values = new double[arguments];
+            for (int i = 0; i < arguments; i++) {
+                values[i] = Double.parseDouble(words[i]);
+            }
+            if (head == Message.Head.WITHIN) {
+                query = SpatialQuery.within(values[0], values[1], values[2], values[3]);
+            } else if (head == Message.Head.RADIUS) {
+                query = SpatialQuery.radius(values[0], values[1], values[2]);
+            } else {
+                query = SpatialQuery.nearest(values[0], values[1], Integer.parseInt(words[2]));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println(usage);
+            return;
+        }
+
+        connection.spatial(head, query).whenComplete((result, e) -> {
+            if (e != null) {
+                System.err.println("Could not get response from server");
+            } else {
+                result.getElements().forEach(System.out::println);
+            }
+        });
+    }
+
+    private synchronized ShowResult cachedShow(ShowRequest request) {
+        if (lastShow == null || lastShow.getOffset() != request.getOffset() || lastShow.getLimit() != request.getLimit()) {
+            return null;
+        }
+        return lastShowResult;
+    }
+
+    private ShowRequest showRequest(String line) {
+        String[] words = line.trim().split("\\s+");
+        if (words.length == 1 && words[0].isEmpty()) {
+            return ShowRequest.all();
+        }
+
+        try {
+            long offset = Long.parseLong(words[0]);
+            int limit = words.length > 1 ? Integer.parseInt(words[1]) : Integer.MAX_VALUE;
+            if (offset < 0 || limit < 0 || words.length > 2) {
+                throw new NumberFormatException();
+            }
+            return new ShowRequest(offset, limit);
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: show [<offset> [<limit>]]");
+            return null;
         }
     }
 
     private Message messageWithElement(Message.Head head, String line) {
         try {
             CollectionElement element = gson.fromJson(line, CollectionElement.class);
+            if (element == null || !element.isValid()) {
+                System.err.println("Element should have a size and a creation date");
+                return null;
+            }
             return new Message(true, head, element);
         } catch (JsonParseException e) {
             System.err.println("Could not parse JSON object");
@@ -151,13 +397,73 @@ public class Client implements Runnable, Closeable {
         }
     }
 
-    private Message importMessage(String line) {
-        try {
-            String str = new String(Files.readAllBytes(new File(line.trim()).toPath()));
-            return new Message(true, Message.Head.IMPORT, str);
+    private void importFile(String line) {
+        if (engine == null) {
+            System.err.println("Import is not supported for a sharded cluster. Use batch instead");
+            return;
+        }
+
+        File file = new File(line.trim());
+        long total = file.length();
+        long importId = new Random().nextLong();
+        AtomicLong acknowledged = new AtomicLong();
+        AtomicInteger reported = new AtomicInteger();
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), IMPORT_CHUNK * 2)) {
+            byte[] data = readChunk(in);
+            int index = 0;
+            do {
+                byte[] next = readChunk(in);
+                int length = data.length;
+                ImportChunk chunk = new ImportChunk(importId, index++, next.length == 0, data);
+                futures.add(connection.request(new Message(true, Message.Head.IMPORT, chunk)).whenComplete((response, e) -> {
+                    long done = acknowledged.addAndGet(length);
+                    int percent = total == 0 ? 100 : (int) (100 * done / total);
+                    if (e == null && percent / 10 > reported.get() && percent / 10 < 10) {
+                        reported.set(percent / 10);
+                        System.out.printf("Import: %d%% sent, %s%n", percent, response.getBody());
+                    }
+                }));
+                data = next;
+            } while (data.length > 0);
         } catch (IOException | InvalidPathException e) {
             System.err.println("Could not read file: " + e.getMessage());
-            return null;
+            return;
+        }
+
+        ImportProgress result = null;
+        String refused = null;
+        int failed = 0;
+        for (CompletableFuture<Message> future : futures) {
+            try {
+                Object body = future.join().getBody();
+                if (body instanceof ImportProgress && ((ImportProgress) body).isDone()) {
+                    result = (ImportProgress) body;
+                } else if (body instanceof String) {
+                    refused = (String) body;
+                }
+            } catch (CompletionException e) {
+                failed++;
+            }
+        }
+        if (result == null && refused != null) {
+            System.err.println(refused);
+        } else if (result == null) {
+            System.err.printf("Import did not complete: no response for %d of %d chunks%n", failed, futures.size());
+        } else if (result.getError() != null) {
+            System.err.println(result);
+        } else {
+            System.out.println(result);
+        }
+    }
+
+    private static byte[] readChunk(InputStream in) throws IOException {
+        byte[] chunk = new byte[IMPORT_CHUNK];
+        int length = 0;
+        int read;
+        while (length < chunk.length && (read = in.read(chunk, length, chunk.length - length)) > 0) {
+            length += read;
         }
+        return length == chunk.length ? chunk : Arrays.copyOf(chunk, length);
     }
 }
@@ -0,0 +1,302 @@
+package net;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public class ClientEngine implements Connection {
+    private static final long MIN_RTO = 20;
+    private static final long MAX_RTO = 5000;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long MIN_TIMEOUT = 2000;
+
+    private final InetAddress address;
+    private final int port;
+    private final MessageCodec codec;
+    private final DatagramSocket socket;
+    private final long session = new Random().nextLong();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, Exchange> pending = new ConcurrentHashMap<>();
+    private final Semaphore window;
+    private final Thread receiver;
+    private volatile Consumer<Message> pushHandler;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "retransmit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object rttLock = new Object();
+    private double srtt = -1;
+    private double rttvar;
+    private long rto = 1000;
+
+    public ClientEngine(InetAddress address, int port, MessageCodec codec, int window) throws SocketException {
+        this.address = address;
+        this.port = port;
+        this.codec = codec;
+        this.window = new Semaphore(window);
+        socket = new DatagramSocket();
+        socket.setReceiveBufferSize(1 << 22);
+        receiver = new Thread(this::receiveLoop, "receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        timer.scheduleWithFixedDelay(this::retransmit, 10, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Message> request(Message message) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        start(message, future, response -> {
+            future.complete(response);
+            return true;
+        }, exchange -> exchange.message);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> show(ShowRequest request) {
+        return fragments(new Message(true, Message.Head.SHOW, request));
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> query(Query query) {
+        return fragments(new Message(true, Message.Head.QUERY, query));
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> spatial(Message.Head head, SpatialQuery query) {
+        return fragments(new Message(true, head, query));
+    }
+
+    private CompletableFuture<ShowResult> fragments(Message request) {
+        CompletableFuture<ShowResult> future = new CompletableFuture<>();
+        FragmentAssembler[] assembler = new FragmentAssembler[1];
+        start(request, future, response -> {
+            if (!(response.getBody() instanceof Fragment)) {
+                return false;
+            }
+            Fragment fragment = (Fragment) response.getBody();
+            if (fragment.isNotModified()) {
+                future.complete(new ShowResult(fragment.getVersion(), null));
+                return true;
+            }
+            if (assembler[0] == null) {
+                assembler[0] = new FragmentAssembler(fragment.getSequenceId(), fragment.getCount());
+            }
+            assembler[0].add(fragment);
+            if (assembler[0].isComplete()) {
+                future.complete(new ShowResult(assembler[0].getVersion(), assembler[0].getElements()));
+                return true;
+            }
+            return false;
+        }, exchange -> {
+            if (assembler[0] == null) {
+                return exchange.message;
+            }
+            Message resend = new Message(true, exchange.message.getHead(),
+                    ShowRequest.resend(assembler[0].getSequenceId(), assembler[0].getMissing()));
+            resend.setSession(exchange.message.getSession());
+            resend.setId(exchange.message.getId());
+            return resend;
+        });
+        return future;
+    }
+
+    public void setPushHandler(Consumer<Message> pushHandler) {
+        this.pushHandler = pushHandler;
+    }
+
+    @Override
+    public void drain() {
+        while (!pending.isEmpty()) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long getRto() {
+        synchronized (rttLock) {
+            return rto;
+        }
+    }
+
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        socket.close();
+        pending.values().forEach(exchange -> fail(exchange, new IOException("Client is closed")));
+    }
+
+    private void start(Message message, CompletableFuture<?> future,
+                       Function<Message, Boolean> handler, Function<Exchange, Message> retransmission) {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return;
+        }
+
+        message.setSession(session);
+        message.setId(nextId.incrementAndGet());
+        Exchange exchange = new Exchange(message, future, handler, retransmission);
+        pending.put(message.getId(), exchange);
+        synchronized (exchange) {
+            if (!send(exchange, message)) {
+                fail(exchange, new IOException("Could not send request to server"));
+            }
+        }
+    }
+
+    private boolean send(Exchange exchange, Message message) {
+        ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+        try {
+            Codecs.encode(codec, message, buffer);
+            exchange.sentAt = System.nanoTime();
+            long timeout = Math.min(MAX_RTO, getRto() << exchange.attempts);
+            exchange.deadline = exchange.sentAt + TimeUnit.MILLISECONDS.toNanos(timeout);
+            exchange.attempts++;
+            socket.send(new DatagramPacket(buffer.array(), buffer.position(), address, port));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void receiveLoop() {
+        byte[] bytes = new byte[0x10000];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+        while (!socket.isClosed()) {
+            Message response;
+            try {
+                socket.receive(packet);
+                response = Codecs.decode(ByteBuffer.wrap(bytes, 0, packet.getLength()));
+            } catch (IOException e) {
+                continue;
+            }
+
+            if (response.isRequest() || response.getSession() != session) {
+                continue;
+            }
+
+            Consumer<Message> push = pushHandler;
+            if (response.getId() == 0 && push != null) {
+                push.accept(response);
+                continue;
+            }
+
+            Exchange exchange = pending.get(response.getId());
+            if (exchange == null) {
+                continue;
+            }
+
+            synchronized (exchange) {
+                if (exchange.attempts == 1 && !exchange.answered) {
+                    sample(System.nanoTime() - exchange.sentAt);
+                }
+                exchange.answered = true;
+                if (response.getHead() == Message.Head.IN_PROGRESS) {
+                    exchange.attempts = 1;
+                    exchange.deadline = System.nanoTime()
+                            + TimeUnit.MILLISECONDS.toNanos(Math.min(MAX_RTO, getRto() << 1));
+                    continue;
+                }
+                exchange.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getRto());
+                if (exchange.handler.apply(response)) {
+                    finish(exchange);
+                }
+            }
+        }
+    }
+
+    private void retransmit() {
+        long now = System.nanoTime();
+        for (Exchange exchange : pending.values()) {
+            synchronized (exchange) {
+                if (!exchange.done && exchange.future.isCancelled()) {
+                    finish(exchange);
+                    continue;
+                }
+                if (exchange.done || now < exchange.deadline) {
+                    continue;
+                }
+                if (exchange.attempts >= MAX_ATTEMPTS
+                        && now - exchange.startedAt >= TimeUnit.MILLISECONDS.toNanos(MIN_TIMEOUT)) {
+                    fail(exchange, new TimeoutException("Could not get response from server"));
+                } else if (!send(exchange, exchange.retransmission.apply(exchange))) {
+                    fail(exchange, new IOException("Could not send request to server"));
+                }
+            }
+        }
+    }
+
+    private void sample(long rttNanos) {
+        double rtt = rttNanos / 1e6;
+        synchronized (rttLock) {
+            if (srtt < 0) {
+                srtt = rtt;
+                rttvar = rtt / 2;
+            } else {
+                rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+                srtt = 0.875 * srtt + 0.125 * rtt;
+            }
+            rto = Math.max(MIN_RTO, Math.min(MAX_RTO, (long) Math.ceil(srtt + 4 * rttvar)));
+        }
+    }
+
+    private void finish(Exchange exchange) {
+        if (!exchange.done) {
+            exchange.done = true;
+            pending.remove(exchange.message.getId());
+            window.release();
+        }
+    }
+
+    private void fail(Exchange exchange, Exception e) {
+        synchronized (exchange) {
+            if (!exchange.done) {
+                finish(exchange);
+                exchange.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Exchange {
+        private final Message message;
+        private final CompletableFuture<?> future;
+        private final Function<Message, Boolean> handler;
+        private final Function<Exchange, Message> retransmission;
+        private final long startedAt = System.nanoTime();
+        private long sentAt;
+        private long deadline;
+        private int attempts = 0;
+        private boolean answered = false;
+        private boolean done = false;
+
+        Exchange(Message message, CompletableFuture<?> future,
+                 Function<Message, Boolean> handler, Function<Exchange, Message> retransmission) {
+            this.message = message;
+            this.future = future;
+            this.handler = handler;
+            this.retransmission = retransmission;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class ClientMirror {
+    private static final Comparator<CollectionElement> ORDER = Comparator
+            .comparingDouble(CollectionElement::getSize)
+            .thenComparingLong(CollectionElement::getId);
+
+    private final ClientEngine engine;
+    private final NavigableSet<CollectionElement> elements = new TreeSet<>(ORDER);
+    private final Map<Long, CollectionElement> byId = new HashMap<>();
+    private final List<ChangeSet.Change> buffered = new ArrayList<>();
+    private long expected = -1;
+    private long checkpoint = -1;
+    private long version = -1;
+    private boolean syncing = false;
+    private boolean failed = false;
+    private int generation = 0;
+    private long resyncs = 0;
+
+    public ClientMirror(ClientEngine engine) {
+        this.engine = engine;
+    }
+
+    public synchronized void subscribed(long sequence) {
+        if (expected < 0 || checkpoint >= expected || sequence < expected - 1 || failed) {
+            expected = sequence + 1;
+            resync();
+        }
+        checkpoint = sequence;
+    }
+
+    public synchronized void accept(ChangeSet changes) {
+        if (expected < 0) {
+            return;
+        }
+
+        for (ChangeSet.Change change : changes.getChanges()) {
+            if (change.getSequence() < expected) {
+                continue;
+            }
+            boolean gap = change.getSequence() > expected;
+            expected = change.getSequence() + 1;
+            if (gap || change.getKind() == ChangeSet.Kind.RESET) {
+                resync();
+            } else if (syncing) {
+                buffered.add(change);
+            } else {
+                apply(change);
+            }
+        }
+    }
+
+    public synchronized boolean isSynced() {
+        return expected >= 0 && !syncing;
+    }
+
+    public synchronized List<CollectionElement> slice(long offset, int limit) {
+        List<CollectionElement> result = new ArrayList<>();
+        Iterator<CollectionElement> iterator = elements.iterator();
+        for (long i = 0; i < offset && iterator.hasNext(); i++) {
+            iterator.next();
+        }
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("mirror: %d elements, version %d, sequence %d, %d resyncs%s",
+                elements.size(), version, expected - 1, resyncs, syncing ? ", syncing" : "");
+    }
+
+    private void resync() {
+        syncing = true;
+        failed = false;
+        buffered.clear();
+        resyncs++;
+        int current = ++generation;
+        CompletableFuture.runAsync(() -> engine.show(ShowRequest.all()).whenComplete((result, e) -> {
+            synchronized (this) {
+                if (current != generation) {
+                    return;
+                }
+                if (e != null) {
+                    System.err.println("Could not synchronize mirror with server");
+                    failed = true;
+                } else {
+                    synced(result);
+                }
+            }
+        }));
+    }
+
+    private void synced(ShowResult result) {
+        elements.clear();
+        byId.clear();
+        result.getElements().forEach(this::put);
+        version = result.getVersion();
+        for (ChangeSet.Change change : buffered) {
+            if (change.getVersion() > result.getVersion()) {
+                apply(change);
+            }
+        }
+        buffered.clear();
+        syncing = false;
+    }
+
+    private void apply(ChangeSet.Change change) {
+        if (change.getKind() == ChangeSet.Kind.ADDED) {
+            put(change.getElement());
+        } else {
+            CollectionElement old = byId.remove(change.getElement().getId());
+            if (old != null) {
+                elements.remove(old);
+            }
+        }
+        version = Math.max(version, change.getVersion());
+    }
+
+    private void put(CollectionElement element) {
+        CollectionElement old = byId.put(element.getId(), element);
+        if (old != null) {
+            elements.remove(old);
+        }
+        elements.add(element);
+    }
+}
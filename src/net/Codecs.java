@@ -0,0 +1,51 @@
+package net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public final class Codecs {
+    public static final MessageCodec SERIALIZATION = new SerializationCodec();
+    public static final MessageCodec BINARY = new BinaryCodec();
+    public static final MessageCodec BINARY_V1 = new BinaryCodec(BinaryCodec.MAGIC_V1);
+
+    private Codecs() {
+    }
+
+    public static MessageCodec forName(String name) {
+        if (name == null || name.isEmpty()) {
+            return BINARY;
+        }
+
+        for (MessageCodec codec : new MessageCodec[]{BINARY, SERIALIZATION}) {
+            if (codec.getName().equalsIgnoreCase(name.trim())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public static MessageCodec detect(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Empty message");
+        }
+
+        byte magic = buffer.get(buffer.position());
+        if (magic == BinaryCodec.MAGIC) {
+            return BINARY;
+        } else if (magic == BinaryCodec.MAGIC_V1) {
+            return BINARY_V1;
+        } else if (magic == SerializationCodec.MAGIC) {
+            return SERIALIZATION;
+        }
+        throw new IOException(String.format("Unknown message format 0x%02X", magic));
+    }
+
+    public static Message decode(ByteBuffer buffer) throws IOException {
+        return detect(buffer).decode(buffer);
+    }
+
+    public static void encode(MessageCodec preferred, Message message, ByteBuffer buffer) throws IOException {
+        MessageCodec codec = preferred.supports(message) ? preferred : SERIALIZATION;
+        codec.encode(message, buffer);
+    }
+}
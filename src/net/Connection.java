@@ -0,0 +1,19 @@
+package net;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+public interface Connection extends Closeable {
+    CompletableFuture<Message> request(Message message);
+
+    CompletableFuture<ShowResult> show(ShowRequest request);
+
+    CompletableFuture<ShowResult> query(Query query);
+
+    CompletableFuture<ShowResult> spatial(Message.Head head, SpatialQuery query);
+
+    void drain();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,107 @@
+package net;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class Dispatcher implements Closeable {
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final Map<Message.Head, Lane> lanes = new EnumMap<>(Message.Head.class);
+
+    public Dispatcher(ServerConfig config) {
+        executor = config.isVirtualThreads()
+                ? newVirtualThreadExecutor(config.getWorkers())
+                : Executors.newFixedThreadPool(config.getWorkers());
+        capacity = new Semaphore(config.getQueueCapacity());
+        config.getConcurrencyLimits().forEach((head, limit) -> lanes.put(head, new Lane(limit)));
+    }
+
+    public void dispatch(Message.Head head, Runnable task) throws InterruptedException {
+        capacity.acquire();
+        Lane lane = lanes.get(head);
+        if (lane == null) {
+            execute(task);
+        } else {
+            lane.offer(task);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            capacity.release();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(int workers) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not supported by this JVM. Using a fixed thread pool");
+            return Executors.newFixedThreadPool(workers);
+        }
+    }
+
+    private class Lane {
+        private final int limit;
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+        private int running = 0;
+
+        Lane(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void offer(Runnable task) {
+            if (running < limit) {
+                running++;
+                execute(wrap(task));
+            } else {
+                pending.add(task);
+            }
+        }
+
+        private Runnable wrap(Runnable task) {
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    next();
+                }
+            };
+        }
+
+        private synchronized void next() {
+            Runnable task = pending.poll();
+            if (task == null) {
+                running--;
+            } else {
+                execute(wrap(task));
+            }
+        }
+    }
+}
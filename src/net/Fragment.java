@@ -0,0 +1,83 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Fragment implements Serializable {
+    static final int BUDGET = 0xC000;
+    private static final int HEADER_ESTIMATE = 64;
+
+    private long sequenceId;
+    private long version;
+    private int index;
+    private int count;
+    private List<CollectionElement> elements;
+
+    public Fragment(long sequenceId, long version, int index, int count, List<CollectionElement> elements) {
+        this.sequenceId = sequenceId;
+        this.version = version;
+        this.index = index;
+        this.count = count;
+        this.elements = elements;
+    }
+
+    public static Fragment notModified(long sequenceId, long version) {
+        return new Fragment(sequenceId, version, 0, 0, new ArrayList<>());
+    }
+
+    public static List<Fragment> split(long sequenceId, long version, List<CollectionElement> elements) {
+        List<List<CollectionElement>> parts = new ArrayList<>();
+        List<CollectionElement> part = new ArrayList<>();
+        int bytes = HEADER_ESTIMATE;
+        for (CollectionElement element : elements) {
+            int elementBytes = BinaryCodec.estimateSize(element);
+            if (!part.isEmpty() && bytes + elementBytes > BUDGET) {
+                parts.add(part);
+                part = new ArrayList<>();
+                bytes = HEADER_ESTIMATE;
+            }
+            part.add(element);
+            bytes += elementBytes;
+        }
+        parts.add(part);
+
+        List<Fragment> fragments = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            fragments.add(new Fragment(sequenceId, version, i, parts.size(), parts.get(i)));
+        }
+        return fragments;
+    }
+
+    public long getSequenceId() {
+        return sequenceId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isNotModified() {
+        return count == 0;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public List<CollectionElement> getElements() {
+        return elements;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ sequenceId: %d; version: %d; index: %d; count: %d; elements: %s }",
+                sequenceId, version, index, count, elements);
+    }
+}
@@ -0,0 +1,64 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FragmentAssembler {
+    private final long sequenceId;
+    private final Fragment[] fragments;
+    private long version = -1;
+    private int received = 0;
+
+    public FragmentAssembler(long sequenceId, int count) {
+        this.sequenceId = sequenceId;
+        fragments = new Fragment[count];
+    }
+
+    public boolean add(Fragment fragment) {
+        if (fragment.getSequenceId() != sequenceId
+                || fragment.getIndex() < 0 || fragment.getIndex() >= fragments.length) {
+            return false;
+        }
+        if (fragments[fragment.getIndex()] == null) {
+            fragments[fragment.getIndex()] = fragment;
+            version = fragment.getVersion();
+            received++;
+        }
+        return true;
+    }
+
+    public boolean isComplete() {
+        return received == fragments.length;
+    }
+
+    public int[] getMissing() {
+        int[] missing = new int[fragments.length - received];
+        int j = 0;
+        for (int i = 0; i < fragments.length; i++) {
+            if (fragments[i] == null) {
+                missing[j++] = i;
+            }
+        }
+        return missing;
+    }
+
+    public List<CollectionElement> getElements() {
+        List<CollectionElement> elements = new ArrayList<>();
+        for (Fragment fragment : fragments) {
+            if (fragment != null) {
+                elements.addAll(fragment.getElements());
+            }
+        }
+        return elements;
+    }
+
+    public long getSequenceId() {
+        return sequenceId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,38 @@
+package net;
+
+import java.io.Serializable;
+
+public class ImportChunk implements Serializable {
+    private long importId;
+    private int index;
+    private boolean last;
+    private byte[] data;
+
+    public ImportChunk(long importId, int index, boolean last, byte[] data) {
+        this.importId = importId;
+        this.index = index;
+        this.last = last;
+        this.data = data;
+    }
+
+    public long getImportId() {
+        return importId;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ import: %d; index: %d; last: %b; bytes: %d }", importId, index, last, data.length);
+    }
+}
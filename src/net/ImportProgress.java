@@ -0,0 +1,46 @@
+package net;
+
+import java.io.Serializable;
+
+public class ImportProgress implements Serializable {
+    private long importId;
+    private int chunks;
+    private int elements;
+    private boolean done;
+    private String error;
+
+    public ImportProgress(long importId, int chunks, int elements, boolean done, String error) {
+        this.importId = importId;
+        this.chunks = chunks;
+        this.elements = elements;
+        this.done = done;
+        this.error = error;
+    }
+
+    public long getImportId() {
+        return importId;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public int getElements() {
+        return elements;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return error == null
+                ? String.format("Imported %d elements from %d chunks%s", elements, chunks, done ? "" : " so far")
+                : String.format("Import failed after %d elements: %s", elements, error);
+    }
+}
@@ -0,0 +1,200 @@
+package net;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+import com.thoughtworks.xstream.XStream;
+import storage.XmlStorage;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ImportSession {
+    private static final int QUEUE_CHUNKS = 64;
+    private static final int INSERT_BATCH = 256;
+    private static final long IDLE_TIMEOUT_MILLIS = 30_000;
+    private static final long FINISHED_GRACE_MILLIS = 60_000;
+    private static final byte[] END = new byte[0];
+
+    private final long importId;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+    private final Map<Integer, byte[]> outOfOrder = new TreeMap<>();
+    private final AtomicInteger elements = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile String error;
+    private volatile long finishedAt;
+    private ByteBuffer scratch = ByteBuffer.allocate(0x1000);
+    private int nextIndex = 0;
+    private int lastIndex = -1;
+
+    ImportSession(long importId, XStream xStream, SortedCollection collection) {
+        this.importId = importId;
+        Thread parser = new Thread(() -> {
+            File staged = null;
+            try {
+                staged = File.createTempFile("import-" + importId + "-", ".staged");
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(staged), 1 << 16))) {
+                    XmlStorage.stream(xStream, new ChunkStream(), INSERT_BATCH, batch -> {
+                        batch.forEach(element -> stage(out, element));
+                        elements.addAndGet(batch.size());
+                    });
+                }
+                replace(collection, staged, elements.get());
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            } finally {
+                if (staged != null && !staged.delete()) {
+                    staged.deleteOnExit();
+                }
+                finishedAt = System.currentTimeMillis();
+                finished.countDown();
+                queue.clear();
+            }
+        }, "import-" + importId);
+        parser.setDaemon(true);
+        parser.start();
+    }
+
+    synchronized ImportProgress offer(ImportChunk chunk) {
+        if (isFinished() || chunk.getIndex() < nextIndex) {
+            return progress();
+        }
+
+        if (chunk.isLast()) {
+            lastIndex = chunk.getIndex();
+        }
+        outOfOrder.put(chunk.getIndex(), chunk.getData());
+        byte[] data;
+        while ((data = outOfOrder.remove(nextIndex)) != null) {
+            put(data);
+            nextIndex++;
+        }
+
+        if (lastIndex >= 0 && nextIndex > lastIndex) {
+            put(END);
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return progress();
+    }
+
+    boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    boolean isExpired(long now) {
+        return isFinished() && now - finishedAt > FINISHED_GRACE_MILLIS;
+    }
+
+    private void stage(DataOutputStream out, CollectionElement element) {
+        while (true) {
+            scratch.clear();
+            try {
+                BinaryCodec.writeElement(element, scratch);
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+        try {
+            out.writeInt(scratch.position());
+            out.write(scratch.array(), 0, scratch.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void replace(SortedCollection collection, File staged, int count) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(staged), 1 << 16))) {
+            collection.atomically(() -> {
+                collection.clear();
+                List<CollectionElement> batch = new ArrayList<>(INSERT_BATCH);
+                byte[] bytes = new byte[0x1000];
+                try {
+                    for (int i = 0; i < count; i++) {
+                        int length = in.readInt();
+                        if (length > bytes.length) {
+                            bytes = new byte[length];
+                        }
+                        in.readFully(bytes, 0, length);
+                        batch.add(BinaryCodec.readElement(ByteBuffer.wrap(bytes, 0, length)));
+                        if (batch.size() == INSERT_BATCH) {
+                            collection.addAll(batch);
+                            batch.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                collection.addAll(batch);
+                return null;
+            });
+        }
+    }
+
+    private void put(byte[] data) {
+        try {
+            while (!isFinished() && !queue.offer(data, 100, TimeUnit.MILLISECONDS)) {
+                Thread.yield();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ImportProgress progress() {
+        return new ImportProgress(importId, nextIndex, elements.get(), isFinished(), error);
+    }
+
+    private class ChunkStream extends InputStream {
+        private byte[] current = new byte[0];
+        private int position = 0;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position >= current.length) {
+                if (current == END) {
+                    return -1;
+                }
+                try {
+                    current = queue.poll(IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Import was interrupted");
+                }
+                if (current == null) {
+                    current = END;
+                    throw new IOException("Import timed out waiting for the next chunk");
+                }
+                position = 0;
+            }
+
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, length);
+            position += length;
+            return length;
+        }
+    }
+}
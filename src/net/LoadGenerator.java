@@ -0,0 +1,220 @@
+package net;
+
+import collection.CollectionElement;
+import com.google.gson.GsonBuilder;
+
+import java.io.*;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator implements Runnable, Closeable {
+    private static final int WINDOW = 64;
+    private static final int REMEMBERED = 1024;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_COLUMNS = {"p50_us", "p90_us", "p99_us", "p999_us"};
+
+    private final BenchConfig config;
+    private final List<ClientEngine> engines = new ArrayList<>();
+    private final Message.Head[] operations;
+    private final int[] weights;
+    private final int totalWeight;
+    private final Map<Message.Head, Stats> stats = new EnumMap<>(Message.Head.class);
+    private final Stats total = new Stats();
+    private long measureFrom;
+    private long measureTo;
+
+    public LoadGenerator(BenchConfig config) throws SocketException {
+        this.config = config;
+        operations = config.getMix().keySet().toArray(new Message.Head[0]);
+        weights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += config.getMix().get(operations[i]);
+            weights[i] = sum;
+            stats.put(operations[i], new Stats());
+        }
+        totalWeight = sum;
+
+        for (int i = 0; i < config.getClients(); i++) {
+            engines.add(new ClientEngine(config.getAddress(), config.getPort(), config.getCodec(), WINDOW));
+        }
+    }
+
+    static boolean supports(Message.Head head) {
+        return head == Message.Head.ADD || head == Message.Head.REMOVE || head == Message.Head.REMOVE_LAST
+                || head == Message.Head.SHOW || head == Message.Head.INFO;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        measureFrom = start + TimeUnit.SECONDS.toNanos(config.getWarmupSeconds());
+        measureTo = measureFrom + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < engines.size(); i++) {
+            int index = i;
+            Thread thread = new Thread(() -> drive(engines.get(index), index, start), "bench-client-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        engines.forEach(ClientEngine::drain);
+
+        try {
+            report();
+        } catch (IOException e) {
+            System.err.println("Could not write report: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        engines.forEach(ClientEngine::close);
+    }
+
+    private void drive(ClientEngine engine, int index, long start) {
+        Random random = new Random(index);
+        Deque<CollectionElement> added = new ArrayDeque<>();
+        long interval = config.getRate() == 0 ? 0 : TimeUnit.SECONDS.toNanos(engines.size()) / config.getRate();
+        long intended = start + interval * index / engines.size();
+
+        while (true) {
+            long now = System.nanoTime();
+            if (interval == 0) {
+                intended = now;
+            } else if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                continue;
+            }
+            if (intended >= measureTo) {
+                return;
+            }
+
+            issue(engine, pick(random), random, added, intended);
+            intended += interval;
+        }
+    }
+
+    private void issue(ClientEngine engine, Message.Head head, Random random, Deque<CollectionElement> added,
+                       long intended) {
+        CompletableFuture<?> future;
+        switch (head) {
+            case ADD:
+                CollectionElement element = new CollectionElement("bench-" + random.nextInt(1_000_000),
+                        random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 1000);
+                if (added.size() == REMEMBERED) {
+                    added.pollFirst();
+                }
+                added.addLast(element);
+                future = engine.request(new Message(true, Message.Head.ADD, element));
+                break;
+            case REMOVE:
+                CollectionElement removed = added.isEmpty()
+                        ? new CollectionElement("bench-missing", random.nextDouble(), 0, 0)
+                        : added.pollFirst();
+                future = engine.request(new Message(true, Message.Head.REMOVE, removed));
+                break;
+            case SHOW:
+                future = engine.show(new ShowRequest(0, config.getShowLimit()));
+                break;
+            default:
+                future = engine.request(new Message(true, head, null));
+                break;
+        }
+
+        if (intended < measureFrom) {
+            return;
+        }
+        Stats operation = stats.get(head);
+        future.whenComplete((response, e) -> {
+            if (e != null) {
+                operation.errors.increment();
+                total.errors.increment();
+            } else {
+                long latency = System.nanoTime() - intended;
+                operation.latency.record(latency);
+                total.latency.record(latency);
+            }
+        });
+    }
+
+    private Message.Head pick(Random random) {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < operations.length; i++) {
+            if (value < weights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void report() throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Message.Head head : operations) {
+            rows.add(row(head.name().toLowerCase(Locale.ROOT), stats.get(head)));
+        }
+        rows.add(row("all", total));
+
+        String text;
+        if ("json".equals(config.getFormat())) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("clients", config.getClients());
+            report.put("rate", config.getRate());
+            report.put("durationSeconds", config.getDurationSeconds());
+            report.put("warmupSeconds", config.getWarmupSeconds());
+            report.put("codec", config.getCodec().getName());
+            report.put("results", rows);
+            text = new GsonBuilder().setPrettyPrinting().create().toJson(report) + System.lineSeparator();
+        } else {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.join(",", rows.get(0).keySet())).append(System.lineSeparator());
+            for (Map<String, Object> row : rows) {
+                StringJoiner joiner = new StringJoiner(",");
+                row.values().forEach(value -> joiner.add(String.valueOf(value)));
+                builder.append(joiner).append(System.lineSeparator());
+            }
+            text = builder.toString();
+        }
+
+        if (config.getOutput() == null) {
+            System.out.print(text);
+        } else {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(config.getOutput()),
+                    StandardCharsets.UTF_8)) {
+                writer.write(text);
+            }
+        }
+    }
+
+    private Map<String, Object> row(String operation, Stats stats) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        long count = stats.latency.getCount();
+        row.put("operation", operation);
+        row.put("requests", count);
+        row.put("errors", stats.errors.sum());
+        row.put("throughput", Math.round(count / (double) config.getDurationSeconds()));
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            row.put(PERCENTILE_COLUMNS[i], Math.round(stats.latency.percentileMicros(PERCENTILES[i])));
+        }
+        row.put("max_us", Math.round(stats.latency.getMaxNanos() / 1e3));
+        return row;
+    }
+
+    private static class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+}
@@ -16,12 +16,26 @@ public class Message implements Serializable {
         LOAD,
         SAVE,
         STOP,
+        BATCH,
+        QUERY,
+        WITHIN,
+        RADIUS,
+        NEAREST,
+        REMOVE_ID,
+        STATS,
+        SUBSCRIBE,
+        UNSUBSCRIBE,
+        CHANGES,
+        REPLICATE,
+        IN_PROGRESS,
     }
 
     private boolean isRequest;
     private Head head;
     private Object body;
     private Date creationDate = new Date();
+    private long session;
+    private long id;
 
     public Message(boolean isRequest, Head head, Object body) {
         this.isRequest = isRequest;
@@ -29,15 +43,28 @@ public class Message implements Serializable {
         this.body = body;
     }
 
+    Message(boolean isRequest, Head head, Object body, Date creationDate, long session, long id) {
+        this(isRequest, head, body);
+        this.creationDate = creationDate;
+        this.session = session;
+        this.id = id;
+    }
+
+    public Message replyTo(Message request) {
+        session = request.session;
+        id = request.id;
+        return this;
+    }
+
     @Override
     public String toString() {
-        return String.format("{ isRequest: %b; head: %s; body: %s; creationDate: %s }",
-                isRequest, head, body, creationDate);
+        return String.format("{ isRequest: %b; head: %s; body: %s; creationDate: %s; session: %d; id: %d }",
+                isRequest, head, body, creationDate, session, id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(Message.class, isRequest, head, body, creationDate);
+        return Objects.hash(Message.class, isRequest, head, body, creationDate, session, id);
     }
 
     public boolean isRequest() {
@@ -55,4 +82,20 @@ public class Message implements Serializable {
     public Date getCreationDate() {
         return creationDate;
     }
+
+    public long getSession() {
+        return session;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setSession(long session) {
+        this.session = session;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
 }
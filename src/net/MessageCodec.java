@@ -0,0 +1,14 @@
+package net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface MessageCodec {
+    String getName();
+
+    boolean supports(Message message);
+
+    void encode(Message message, ByteBuffer buffer) throws IOException;
+
+    Message decode(ByteBuffer buffer) throws IOException;
+}
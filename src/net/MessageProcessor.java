@@ -1,15 +1,24 @@
 package net;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class MessageProcessor {
-    private Map<Message.Head, Function<Message, Message>> requestMap = new HashMap<>();
+    private Map<Message.Head, Function<Message, List<Message>>> requestMap = new HashMap<>();
     private Map<Message.Head, Consumer<Message>> responseMap = new HashMap<>();
 
     public void setRequestProcessor(Message.Head type, Function<Message, Message> processor) {
+        requestMap.put(type, msg -> {
+            Message response = processor.apply(msg);
+            return response == null ? Collections.emptyList() : Collections.singletonList(response);
+        });
+    }
+
+    public void setMultiRequestProcessor(Message.Head type, Function<Message, List<Message>> processor) {
         requestMap.put(type, processor);
     }
 
@@ -25,7 +34,7 @@ public class MessageProcessor {
         return responseMap.containsKey(type);
     }
 
-    public Message process(Message message) {
+    public List<Message> process(Message message) {
         if (message.isRequest()) {
             if (requestMap.containsKey(message.getHead())) {
                 return requestMap.get(message.getHead()).apply(message);
@@ -36,6 +45,6 @@ public class MessageProcessor {
             }
         }
 
-        return null;
+        return Collections.emptyList();
     }
 }
@@ -0,0 +1,140 @@
+package net;
+
+import collection.CollectionElement;
+import collection.Position;
+
+import java.io.Serializable;
+
+public class Query implements Serializable {
+    public enum Order {
+        SIZE,
+        SIZE_DESC,
+        NAME,
+        CREATED,
+        CREATED_DESC,
+    }
+
+    private String nameEquals;
+    private String namePrefix;
+    private Double minSize;
+    private Double maxSize;
+    private Double minX;
+    private Double maxX;
+    private Double minY;
+    private Double maxY;
+    private Long createdAfter;
+    private Long createdBefore;
+    private Order order = Order.SIZE;
+    private int limit = Integer.MAX_VALUE;
+
+    public boolean matches(CollectionElement element) {
+        String name = element.getName();
+        if (nameEquals != null && !nameEquals.equals(name)) {
+            return false;
+        }
+        if (namePrefix != null && (name == null || !name.startsWith(namePrefix))) {
+            return false;
+        }
+        if (minSize != null && element.getSize() < minSize || maxSize != null && element.getSize() > maxSize) {
+            return false;
+        }
+        if (hasBox()) {
+            Position position = element.getPosition();
+            if (position == null
+                    || minX != null && position.getX() < minX || maxX != null && position.getX() > maxX
+                    || minY != null && position.getY() < minY || maxY != null && position.getY() > maxY) {
+                return false;
+            }
+        }
+        if (createdAfter != null || createdBefore != null) {
+            long created = element.getCreationDate().getTime();
+            return (createdAfter == null || created >= createdAfter) && (createdBefore == null || created < createdBefore);
+        }
+        return true;
+    }
+
+    public boolean hasBox() {
+        return minX != null || maxX != null || minY != null || maxY != null;
+    }
+
+    public String getNameEquals() {
+        return nameEquals;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public Double getMinSize() {
+        return minSize;
+    }
+
+    public Double getMaxSize() {
+        return maxSize;
+    }
+
+    public Double getMinX() {
+        return minX;
+    }
+
+    public Double getMaxX() {
+        return maxX;
+    }
+
+    public Double getMinY() {
+        return minY;
+    }
+
+    public Double getMaxY() {
+        return maxY;
+    }
+
+    public Long getCreatedAfter() {
+        return createdAfter;
+    }
+
+    public Long getCreatedBefore() {
+        return createdBefore;
+    }
+
+    public Order getOrder() {
+        return order == null ? Order.SIZE : order;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setNameEquals(String nameEquals) {
+        this.nameEquals = nameEquals;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public void setSizeRange(Double minSize, Double maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    public void setBox(Double minX, Double minY, Double maxX, Double maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public void setCreatedRange(Long createdAfter, Long createdBefore) {
+        this.createdAfter = createdAfter;
+        this.createdBefore = createdBefore;
+    }
+
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+}
@@ -0,0 +1,87 @@
+package net;
+
+import collection.CollectionElement;
+import collection.Snapshot;
+
+import java.util.*;
+
+public final class QueryExecutor {
+    private static final Comparator<CollectionElement> BY_NAME = Comparator.comparing(CollectionElement::getName,
+            Comparator.nullsFirst(Comparator.naturalOrder()));
+    private static final Comparator<CollectionElement> BY_CREATED =
+            Comparator.comparingLong(element -> element.getCreationDate().getTime());
+    private static final Comparator<CollectionElement> BY_SIZE =
+            Comparator.comparingDouble(CollectionElement::getSize).thenComparingLong(CollectionElement::getId);
+
+    private QueryExecutor() {
+    }
+
+    public static List<CollectionElement> execute(Query query, Snapshot snapshot) {
+        int from = query.getMinSize() == null ? 0 : snapshot.headCount(query.getMinSize(), false);
+        int to = query.getMaxSize() == null ? snapshot.size() : snapshot.headCount(query.getMaxSize(), true);
+        int limit = Math.max(query.getLimit(), 0);
+        List<CollectionElement> result = new ArrayList<>();
+        if (from >= to || limit == 0) {
+            return result;
+        }
+
+        switch (query.getOrder()) {
+            case SIZE:
+                Iterator<CollectionElement> iterator = snapshot.iterator(from);
+                for (int i = from; i < to && result.size() < limit; i++) {
+                    CollectionElement element = iterator.next();
+                    if (query.matches(element)) {
+                        result.add(element);
+                    }
+                }
+                return result;
+            case SIZE_DESC:
+                for (int i = to - 1; i >= from && result.size() < limit; i--) {
+                    CollectionElement element = snapshot.get(i);
+                    if (query.matches(element)) {
+                        result.add(element);
+                    }
+                }
+                return result;
+            default:
+                return topK(query, snapshot, from, to, limit, order(query.getOrder()));
+        }
+    }
+
+    public static Comparator<CollectionElement> order(Query.Order order) {
+        switch (order) {
+            case SIZE:
+                return BY_SIZE;
+            case SIZE_DESC:
+                return BY_SIZE.reversed();
+            case NAME:
+                return BY_NAME;
+            case CREATED:
+                return BY_CREATED;
+            default:
+                return BY_CREATED.reversed();
+        }
+    }
+
+    private static List<CollectionElement> topK(Query query, Snapshot snapshot, int from, int to, int limit,
+                                                Comparator<CollectionElement> order) {
+        PriorityQueue<CollectionElement> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+        Iterator<CollectionElement> iterator = snapshot.iterator(from);
+        for (int i = from; i < to; i++) {
+            CollectionElement element = iterator.next();
+            if (!query.matches(element)) {
+                continue;
+            }
+            if (top.size() < limit) {
+                top.add(element);
+            } else if (order.compare(element, top.peek()) < 0) {
+                top.poll();
+                top.add(element);
+            }
+        }
+
+        List<CollectionElement> result = new ArrayList<>(top);
+        result.sort(order);
+        return result;
+    }
+}
@@ -0,0 +1,210 @@
+package net;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class Replicator implements Closeable {
+    private static final long HEARTBEAT_MILLIS = 1000;
+    private static final int WINDOW = 4;
+
+    private final InetSocketAddress primary;
+    private final SortedCollection collection;
+    private final ClientEngine engine;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replicator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<ChangeSet.Change> buffered = new ArrayList<>();
+    private CompletableFuture<ShowResult> syncRequest;
+    private long expected = -1;
+    private long latest = 0;
+    private long lastContact = 0;
+    private boolean syncing = false;
+    private boolean fetching = false;
+    private boolean failed = false;
+    private int generation = 0;
+    private long applied = 0;
+    private long fetches = 0;
+    private long resyncs = 0;
+
+    Replicator(InetSocketAddress primary, SortedCollection collection) throws SocketException {
+        this.primary = primary;
+        this.collection = collection;
+        engine = new ClientEngine(primary.getAddress(), primary.getPort(), Codecs.BINARY, WINDOW);
+        engine.setPushHandler(msg -> {
+            if (msg.getBody() instanceof ChangeSet) {
+                accept((ChangeSet) msg.getBody(), false);
+            }
+        });
+        timer.scheduleWithFixedDelay(this::heartbeat, 0, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized long getLag() {
+        return expected < 0 || syncing ? latest : Math.max(0, latest - (expected - 1));
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        engine.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("replication: replica of %s, sequence %d of %d (lag %d), last contact %s, "
+                        + "%d changes applied, %d fetches, %d resyncs%s",
+                primary, expected - 1, latest, getLag(),
+                lastContact == 0 ? "never" : (System.currentTimeMillis() - lastContact) + " ms ago",
+                applied, fetches, resyncs, syncing ? ", syncing" : "");
+    }
+
+    private void heartbeat() {
+        synchronized (this) {
+            if (failed) {
+                resync();
+            }
+        }
+        fetch();
+    }
+
+    private void fetch() {
+        long from;
+        synchronized (this) {
+            if (fetching) {
+                return;
+            }
+            fetching = true;
+            fetches++;
+            from = Math.max(expected, 0);
+        }
+        engine.request(new Message(true, Message.Head.REPLICATE, from)).whenComplete((response, e) -> {
+            synchronized (this) {
+                fetching = false;
+            }
+            if (e == null && response.getBody() instanceof ChangeSet) {
+                accept((ChangeSet) response.getBody(), true);
+            }
+        });
+    }
+
+    private synchronized void accept(ChangeSet changes, boolean fill) {
+        lastContact = System.currentTimeMillis();
+        if (expected >= 0 && changes.getLatest() < expected - 1) {
+            expected = -1;
+            latest = changes.getLatest();
+        } else {
+            latest = Math.max(latest, changes.getLatest());
+        }
+        if (expected < 0) {
+            if (fill) {
+                expected = changes.getLatest() + 1;
+                resync();
+            }
+            return;
+        }
+
+        for (ChangeSet.Change change : changes.getChanges()) {
+            if (change.getSequence() < expected) {
+                continue;
+            }
+            if (change.getKind() == ChangeSet.Kind.RESET) {
+                expected = changes.getLatest() + 1;
+                resync();
+                return;
+            }
+            if (change.getSequence() > expected) {
+                later(this::fetch);
+                return;
+            }
+
+            expected++;
+            if (syncing) {
+                buffered.add(change);
+            } else {
+                apply(change);
+            }
+        }
+        if (fill && expected <= latest) {
+            later(this::fetch);
+        }
+    }
+
+    private void later(Runnable task) {
+        try {
+            timer.execute(task);
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void resync() {
+        syncing = true;
+        failed = false;
+        buffered.clear();
+        resyncs++;
+        int current = ++generation;
+        if (syncRequest != null) {
+            syncRequest.cancel(false);
+            syncRequest = null;
+        }
+        later(() -> {
+            CompletableFuture<ShowResult> request = engine.show(ShowRequest.all());
+            synchronized (this) {
+                if (current != generation) {
+                    request.cancel(false);
+                    return;
+                }
+                syncRequest = request;
+            }
+            request.whenComplete((result, e) -> {
+                synchronized (this) {
+                    if (current != generation) {
+                        return;
+                    }
+                    syncRequest = null;
+                    if (e != null) {
+                        System.err.println("Could not copy collection from primary " + primary);
+                        failed = true;
+                    } else {
+                        synced(result);
+                    }
+                }
+            });
+        });
+    }
+
+    private void synced(ShowResult result) {
+        collection.replaceAll(result.getElements());
+        for (ChangeSet.Change change : buffered) {
+            if (change.getVersion() > result.getVersion()) {
+                apply(change);
+            }
+        }
+        buffered.clear();
+        syncing = false;
+    }
+
+    private void apply(ChangeSet.Change change) {
+        CollectionElement element = change.getElement();
+        if (change.getKind() == ChangeSet.Kind.ADDED) {
+            if (collection.get(element.getId()) == null) {
+                collection.addAll(Collections.singletonList(element));
+            }
+        } else {
+            collection.removeById(element.getId());
+        }
+        applied++;
+    }
+}
@@ -0,0 +1,64 @@
+package net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class RequestLog {
+    private static final List<Message> IN_PROGRESS = Collections.unmodifiableList(new ArrayList<>());
+
+    private final Map<Key, List<Message>> responses;
+
+    public RequestLog(int capacity) {
+        responses = new LinkedHashMap<Key, List<Message>>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Message>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized List<Message> begin(Message request) {
+        Key key = new Key(request);
+        List<Message> sent = responses.get(key);
+        if (sent == null) {
+            responses.put(key, IN_PROGRESS);
+        } else if (sent == IN_PROGRESS) {
+            Message ack = new Message(false, Message.Head.IN_PROGRESS, null);
+            ack.replyTo(request);
+            return Collections.singletonList(ack);
+        }
+        return sent;
+    }
+
+    public synchronized boolean contains(Message request) {
+        return responses.containsKey(new Key(request));
+    }
+
+    public synchronized void complete(Message request, List<Message> sent) {
+        responses.put(new Key(request), sent);
+    }
+
+    private static final class Key {
+        private final long session;
+        private final long id;
+
+        Key(Message message) {
+            session = message.getSession();
+            id = message.getId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).session == session && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(session, id);
+        }
+    }
+}
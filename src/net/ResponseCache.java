@@ -0,0 +1,116 @@
+package net;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+class ResponseCache {
+    private final long capacity;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long evictions = 0;
+
+    ResponseCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    static Key key(Message request, long version) {
+        if (request.getHead() == Message.Head.INFO) {
+            return new Key(Message.Head.INFO, 0, 0);
+        }
+        if (request.getHead() != Message.Head.SHOW) {
+            return null;
+        }
+
+        ShowRequest show = request.getBody() instanceof ShowRequest ? (ShowRequest) request.getBody() : ShowRequest.all();
+        if (show.isResend() || show.getVersion() == version) {
+            return null;
+        }
+        return new Key(Message.Head.SHOW, show.getOffset(), show.getLimit());
+    }
+
+    synchronized Entry get(Key key, long version) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.version != version ? null : entry;
+    }
+
+    synchronized void put(Key key, Entry entry) {
+        if (entry.bytes > capacity) {
+            return;
+        }
+
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += entry.bytes;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > capacity && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("response cache: %d entries, %d of %d bytes, %d evictions",
+                entries.size(), bytes, capacity, evictions);
+    }
+
+    static final class Key {
+        private final Message.Head head;
+        private final long offset;
+        private final int limit;
+
+        Key(Message.Head head, long offset, int limit) {
+            this.head = head;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return head == key.head && offset == key.offset && limit == key.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(head, offset, limit);
+        }
+    }
+
+    static final class Entry {
+        private final long version;
+        private final List<byte[]> datagrams;
+        private final List<Fragment> fragments;
+        private final long bytes;
+
+        Entry(long version, List<byte[]> datagrams, List<Fragment> fragments) {
+            this.version = version;
+            this.datagrams = Collections.unmodifiableList(datagrams);
+            this.fragments = fragments;
+            long size = 0;
+            for (byte[] datagram : datagrams) {
+                size += datagram.length;
+            }
+            bytes = size;
+        }
+
+        List<byte[]> getDatagrams() {
+            return datagrams;
+        }
+
+        List<Fragment> getFragments() {
+            return fragments;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+public class SerializationCodec implements MessageCodec {
+    static final byte MAGIC = (byte) 0xAC;
+
+    @Override
+    public String getName() {
+        return "serialization";
+    }
+
+    @Override
+    public boolean supports(Message message) {
+        return message.getBody() == null || message.getBody() instanceof Serializable;
+    }
+
+    @Override
+    public void encode(Message message, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ObjectOutputStream oo = new ObjectOutputStream(outputStream)) {
+            oo.writeObject(message);
+        }
+
+        try {
+            buffer.put(outputStream.toByteArray());
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message is too large", e);
+        }
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer) throws IOException {
+        try (ObjectInputStream oi = new ObjectInputStream(new ByteBufferInputStream(buffer))) {
+            Object obj = oi.readObject();
+            if (obj instanceof Message) {
+                return (Message) obj;
+            }
+            throw new IOException("Not a message: " + obj);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
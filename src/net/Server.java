@@ -1,81 +1,178 @@
 package net;
 
 import cli.InvalidCommandLineArgumentException;
+import collection.Aggregates;
 import collection.CollectionElement;
+import collection.EvictionPolicy;
+import collection.Snapshot;
+import collection.SpatialIndex;
+import collection.SortedCollection;
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
+import storage.ColdTier;
+import storage.ColumnarStorage;
+import storage.JournalStorage;
+import storage.Storage;
+import storage.XmlStorage;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
 public class Server implements Runnable, Closeable {
-    private boolean shouldRun = true;
-    private final Queue<CollectionElement> collection = new PriorityBlockingQueue<>();
+    private static final Set<Message.Head> MUTATIONS = EnumSet.of(Message.Head.ADD, Message.Head.REMOVE,
+            Message.Head.REMOVE_FIRST, Message.Head.REMOVE_LAST, Message.Head.IMPORT,
+            Message.Head.LOAD, Message.Head.SAVE, Message.Head.STOP, Message.Head.BATCH,
+            Message.Head.REMOVE_ID);
+    private static final Set<Message.Head> REPLICA_REJECTED = EnumSet.copyOf(MUTATIONS);
+    private static final int SEND_ATTEMPTS = 100;
+    private static final long SEND_BACKOFF_NANOS = 100_000;
 
-    private final File file;
-    private final XStream xStream = new XStream();
-    private DatagramChannel channel;
+    static {
+        REPLICA_REJECTED.removeAll(EnumSet.of(Message.Head.SAVE, Message.Head.STOP));
+    }
 
-    public Server(String[] args) throws IOException, InvalidCommandLineArgumentException {
-        if (args.length < 2) {
-            throw new InvalidCommandLineArgumentException("You should specify port");
-        }
+    private volatile boolean shouldRun = true;
+    private final SortedCollection collection;
+    private final SpatialIndex spatialIndex;
+    private final Aggregates aggregates;
+    private final ColdTier coldTier;
 
-        int port;
-        try {
-            port = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            throw new InvalidCommandLineArgumentException("Port should be a number");
+    private final Storage storage;
+    private final XStream xStream = new XStream();
+    private final Dispatcher dispatcher;
+    private final BufferPool bufferPool;
+    private final AllocationMonitor allocationMonitor = new AllocationMonitor();
+    private final ServerMetrics metrics;
+    private final ResponseCache responseCache;
+    private final SubscriptionHub subscriptions;
+    private final Replicator replicator;
+    private ObjectName metricsName;
+    private final RequestLog requestLog = new RequestLog(0x10000);
+    private final AtomicLong nextSequenceId = new AtomicLong(System.currentTimeMillis());
+    private final Map<Long, List<Fragment>> sentFragments = new LinkedHashMap<Long, List<Fragment>>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<Fragment>> eldest) {
+            return size() > 16;
         }
+    };
+    private final Map<Long, ImportSession> imports = new HashMap<>();
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<Selector> selectors = new ArrayList<>();
 
-        if (port < 1024 || port > 65_535) {
-            throw new InvalidCommandLineArgumentException("Port should be between 1024 and 65 535");
-        }
+    public Server(String[] args) throws IOException, InvalidCommandLineArgumentException {
+        this(ServerConfig.fromArgs(args));
+    }
 
-        String envname = "LAB6_SAVE_PATH";
-        String envval = System.getenv(envname);
-        if (envval == null || envval.isEmpty()) {
-            throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_SAVE_PATH' should be set");
+    public Server(ServerConfig config) throws IOException {
+        if ("xml".equals(config.getStorage())) {
+            storage = new XmlStorage(config.getSaveFile());
+        } else if ("columnar".equals(config.getStorage())) {
+            storage = new ColumnarStorage(config.getSaveFile());
+        } else {
+            storage = new JournalStorage(config.getSaveFile(), config.getSyncIntervalMillis(), config.getCompactAfter());
         }
-
-        file = new File(envval);
+        collection = new SortedCollection(config.getElementStore());
+        collection.setIdSequence(config.getShardIndex(), config.getShardCount());
+        spatialIndex = new SpatialIndex(config.getGridCellSize());
+        collection.addListener(spatialIndex);
+        aggregates = new Aggregates(collection);
+        collection.addListener(aggregates);
+        metrics = new ServerMetrics(config.getMetricsSampleRate(), collection::size);
+        responseCache = config.getResponseCacheKilobytes() == 0
+                ? null
+                : new ResponseCache(1024L * config.getResponseCacheKilobytes());
         Runtime.getRuntime().addShutdownHook(new Thread(this::save));
         load();
+        coldTier = config.isBounded() && config.isColdTier()
+                ? new ColdTier(new File(config.getSaveFile().getPath() + ".cold"))
+                : null;
+        if (coldTier != null) {
+            if (storage instanceof JournalStorage) {
+                ((JournalStorage) storage).setColdTier(coldTier);
+            }
+            collection.reserveIds(coldTier.getMaxId());
+            collection.evict(element -> coldTier.contains(element.getId()));
+            collection.addListener(coldTier);
+            aggregates.setKeepEvicted(true);
+            coldTier.forEach(aggregates::addEvicted);
+        }
+        if (config.isBounded()) {
+            collection.setCapacity(config.getCapacity(), 1024L * 1024 * config.getCapacityMegabytes(),
+                    EvictionPolicy.forName(config.getEviction()));
+        }
 
-        channel = DatagramChannel.open();
-        channel.bind(new InetSocketAddress(port));
+        dispatcher = new Dispatcher(config);
+        bufferPool = new BufferPool(0x10000, config.getWorkers() + config.getReceivers() + 1);
+        openChannels(config.getPort(), config.getReceivers());
+        subscriptions = new SubscriptionHub(collection::getVersion, this::push);
+        subscriptions.setKeepEvicted(coldTier != null);
+        collection.addListener(subscriptions);
+        replicator = config.isReplica() ? new Replicator(config.getPrimary(), collection) : null;
+        registerMetrics(config.getPort());
     }
 
     public void run() {
         MessageProcessor messageProcessor = new MessageProcessor();
         messageProcessor.setRequestProcessor(Message.Head.INFO, msg -> infoMessage());
-        messageProcessor.setRequestProcessor(Message.Head.REMOVE_FIRST, msg -> {
-            removeFirst();
-            return null;
-        });
-        messageProcessor.setRequestProcessor(Message.Head.REMOVE_LAST, msg -> {
-            removeLast();
-            return null;
-        });
+        messageProcessor.setRequestProcessor(Message.Head.STATS, msg -> statsMessage());
+        messageProcessor.setRequestProcessor(Message.Head.SUBSCRIBE,
+                msg -> new Message(false, Message.Head.SUBSCRIBE, subscriptions.getSequence()));
+        messageProcessor.setRequestProcessor(Message.Head.REMOVE_FIRST,
+                msg -> new Message(false, Message.Head.REMOVE_FIRST, removeFirst()));
+        messageProcessor.setRequestProcessor(Message.Head.REMOVE_LAST,
+                msg -> new Message(false, Message.Head.REMOVE_LAST, removeLast()));
         messageProcessor.setRequestProcessor(Message.Head.ADD, msg -> {
-            if (msg.getBody() instanceof CollectionElement) {
+            if (msg.getBody() instanceof CollectionElement && ((CollectionElement) msg.getBody()).isValid()) {
                 collection.add((CollectionElement) msg.getBody());
             }
             return null;
         });
         messageProcessor.setRequestProcessor(Message.Head.REMOVE, msg -> {
             if (msg.getBody() instanceof CollectionElement) {
-                collection.remove(msg.getBody());
+                remove((CollectionElement) msg.getBody());
             }
             return null;
         });
-        messageProcessor.setRequestProcessor(Message.Head.SHOW, msg -> showMessage());
+        messageProcessor.setRequestProcessor(Message.Head.REMOVE_ID, msg -> {
+            if (msg.getBody() instanceof Long) {
+                removeById((Long) msg.getBody());
+            }
+            return null;
+        });
+        messageProcessor.setMultiRequestProcessor(Message.Head.SHOW, msg -> showMessages(msg.getHead(),
+                msg.getBody() instanceof ShowRequest ? (ShowRequest) msg.getBody() : ShowRequest.all()));
+        messageProcessor.setMultiRequestProcessor(Message.Head.QUERY, msg -> resultMessages(msg, snapshot ->
+                query(msg.getBody() instanceof Query ? (Query) msg.getBody() : new Query(), snapshot)));
+        messageProcessor.setMultiRequestProcessor(Message.Head.WITHIN, msg -> resultMessages(msg, snapshot -> {
+            SpatialQuery query = (SpatialQuery) msg.getBody();
+            return visible(snapshot,
+                    spatialIndex.within(query.getMinX(), query.getMinY(), query.getMaxX(), query.getMaxY()));
+        }));
+        messageProcessor.setMultiRequestProcessor(Message.Head.RADIUS, msg -> resultMessages(msg, snapshot -> {
+            SpatialQuery query = (SpatialQuery) msg.getBody();
+            return visible(snapshot, spatialIndex.radius(query.getX(), query.getY(), query.getRadius()));
+        }));
+        messageProcessor.setMultiRequestProcessor(Message.Head.NEAREST, msg -> resultMessages(msg, snapshot -> {
+            SpatialQuery query = (SpatialQuery) msg.getBody();
+            return visible(snapshot, spatialIndex.nearest(query.getX(), query.getY(), query.getCount()));
+        }));
         messageProcessor.setRequestProcessor(Message.Head.IMPORT, msg -> {
+            if (msg.getBody() instanceof ImportChunk) {
+                return new Message(false, Message.Head.IMPORT, importChunk((ImportChunk) msg.getBody()));
+            }
             importCollection(msg);
             return null;
         });
@@ -87,139 +184,605 @@ public class Server implements Runnable, Closeable {
             save();
             return null;
         });
+        messageProcessor.setRequestProcessor(Message.Head.BATCH, msg -> msg.getBody() instanceof Batch
+                ? new Message(false, Message.Head.BATCH, applyBatch((Batch) msg.getBody()))
+                : null);
         messageProcessor.setRequestProcessor(Message.Head.STOP, msg -> {
-            shouldRun = false;
+            stop();
             return null;
         });
+        messageProcessor.setRequestProcessor(Message.Head.REPLICATE, msg -> msg.getBody() instanceof Long
+                ? new Message(false, Message.Head.REPLICATE, subscriptions.changesFrom((Long) msg.getBody()))
+                : null);
+        if (replicator != null) {
+            for (Message.Head head : REPLICA_REJECTED) {
+                messageProcessor.setRequestProcessor(head, msg -> new Message(false, msg.getHead(),
+                        "This server is a read-only replica. Send changes to the primary"));
+            }
+        }
+        if (coldTier != null) {
+            for (Message.Head head : EnumSet.of(Message.Head.LOAD, Message.Head.IMPORT)) {
+                messageProcessor.setRequestProcessor(head, msg -> new Message(false, msg.getHead(),
+                        "Load and import are disabled while the cold tier is on"));
+            }
+        }
 
-        while (shouldRun) {
-            ByteBuffer buffer = ByteBuffer.allocate(0x10000);
-            SocketAddress remoteAddress;
-
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 1; i < selectors.size(); i++) {
+            Selector selector = selectors.get(i);
+            Thread thread = new Thread(() -> receive(selector, messageProcessor), "receiver-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        receive(selectors.get(0), messageProcessor);
+        stop();
+        for (Thread thread : threads) {
             try {
-                remoteAddress = channel.receive(buffer);
-            } catch (IOException e) {
-                continue;
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
+        }
+    }
 
-            byte[] bytes = buffer.array();
-            InputStream inputStream = new ByteArrayInputStream(bytes);
+    private void receive(Selector selector, MessageProcessor messageProcessor) {
+        allocationMonitor.attach(Thread.currentThread());
+        try {
+            while (shouldRun) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    DatagramChannel channel = (DatagramChannel) keys.next().channel();
+                    keys.remove();
+                    boolean more = true;
+                    while (more && shouldRun) {
+                        more = receiveOne(channel, messageProcessor);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (shouldRun) {
+                e.printStackTrace();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
 
-            Message request;
+    private boolean receiveOne(DatagramChannel channel, MessageProcessor messageProcessor)
+            throws InterruptedException {
+        ByteBuffer buffer = bufferPool.acquire();
+        SocketAddress remoteAddress;
+        MessageCodec codec;
+        Message request;
+        boolean received = false;
 
-            try (ObjectInputStream oi = new ObjectInputStream(inputStream)) {
-                Object obj = oi.readObject();
-                if (obj instanceof Message) {
-                    request = (Message) obj;
-                } else {
-                    continue;
-                }
-            } catch (IOException | ClassNotFoundException e) {
+        try {
+            remoteAddress = channel.receive(buffer);
+            if (remoteAddress == null) {
+                return false;
+            }
+            allocationMonitor.datagramReceived();
+            received = true;
+            buffer.flip();
+            metrics.received(buffer.remaining());
+            long start = metrics.startTimer();
+            codec = Codecs.detect(buffer);
+            request = codec.decode(buffer);
+            metrics.decoded(start);
+        } catch (IOException e) {
+            if (received) {
+                metrics.decodeFailed();
+            }
+            if (shouldRun && channel.isOpen()) {
                 e.printStackTrace();
-                continue;
             }
+            return received;
+        } finally {
+            bufferPool.release(buffer);
+        }
+
+        if (!request.isRequest()) {
+            return true;
+        }
+
+        if (request.getHead() == Message.Head.SUBSCRIBE || request.getHead() == Message.Head.REPLICATE) {
+            subscriptions.subscribe(remoteAddress, request.getSession(), codec);
+        } else if (request.getHead() == Message.Head.UNSUBSCRIBE) {
+            subscriptions.unsubscribe(remoteAddress);
+        }
+
+        if (request.getHead() == Message.Head.STOP) {
+            respond(messageProcessor, channel, codec, request, remoteAddress);
+            return false;
+        }
+        if (isIdempotent(request) && requestLog.contains(request)) {
+            respond(messageProcessor, channel, codec, request, remoteAddress);
+            return true;
+        }
+
+        dispatcher.dispatch(request.getHead(),
+                () -> respond(messageProcessor, channel, codec, request, remoteAddress));
+        return true;
+    }
+
+    private void stop() {
+        shouldRun = false;
+        selectors.forEach(Selector::wakeup);
+    }
+
+    private void openChannels(int port, int receivers) throws IOException {
+        DatagramChannel first = DatagramChannel.open();
+        boolean sharded = receivers > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        if (receivers > 1 && !sharded) {
+            System.err.println("SO_REUSEPORT is not supported. All receivers will share one channel");
+        }
+
+        for (int i = 0; i < (sharded ? receivers : 1); i++) {
+            DatagramChannel channel = i == 0 ? first : DatagramChannel.open();
+            if (sharded) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            channels.add(channel);
+        }
+        for (int i = 0; i < receivers; i++) {
+            Selector selector = Selector.open();
+            channels.get(i % channels.size()).register(selector, SelectionKey.OP_READ);
+            selectors.add(selector);
+        }
+    }
 
-            if (!request.isRequest()) {
-                continue;
+    private void send(DatagramChannel channel, ByteBuffer buffer, SocketAddress remoteAddress) throws IOException {
+        for (int attempt = 1; channel.send(buffer, remoteAddress) == 0; attempt++) {
+            if (attempt == SEND_ATTEMPTS) {
+                throw new IOException("Could not send response: socket buffer is full");
             }
+            LockSupport.parkNanos(SEND_BACKOFF_NANOS);
+        }
+    }
+
+    private static boolean isIdempotent(Message request) {
+        return request.getId() != 0 && MUTATIONS.contains(request.getHead());
+    }
 
-            new Thread(() -> {
-                Message response = messageProcessor.process(request);
-                if (response == null) {
-                    return;
+    private void push(MessageCodec codec, Message message, SocketAddress remoteAddress) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            Codecs.encode(codec, message, buffer);
+            buffer.flip();
+            int bytes = buffer.remaining();
+            send(channels.get(0), buffer, remoteAddress);
+            metrics.sent(bytes);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void respond(MessageProcessor messageProcessor, DatagramChannel channel, MessageCodec codec,
+                         Message request, SocketAddress remoteAddress) {
+        long start = metrics.startTimer();
+        ResponseCache.Key cacheKey = null;
+        long version = collection.getVersion();
+        if (responseCache != null && codec == Codecs.BINARY) {
+            cacheKey = ResponseCache.key(request, version);
+        }
+        if (cacheKey != null) {
+            ResponseCache.Entry cached = responseCache.get(cacheKey, version);
+            if (cached != null) {
+                metrics.cacheHit();
+                resend(channel, cached, request, remoteAddress);
+                metrics.handled(request.getHead(), start);
+                return;
+            }
+            metrics.cacheMiss();
+        }
+
+        boolean idempotent = isIdempotent(request);
+        List<Message> responses = idempotent ? requestLog.begin(request) : null;
+        if (responses == null) {
+            try {
+                responses = messageProcessor.process(request);
+            } catch (RuntimeException e) {
+                metrics.failed(request.getHead());
+                e.printStackTrace();
+                responses = Collections.emptyList();
+            }
+            if (responses.isEmpty() && request.getId() != 0) {
+                responses = Collections.singletonList(new Message(false, request.getHead(), null));
+            }
+            responses.forEach(response -> response.replyTo(request));
+            if (idempotent) {
+                requestLog.complete(request, responses);
+            }
+        }
+        metrics.handled(request.getHead(), start);
+
+        List<byte[]> encoded = cacheKey == null ? null : new ArrayList<>(responses.size());
+        for (Message response : responses) {
+            ByteBuffer buffer = bufferPool.acquire();
+            try {
+                long encodeStart = metrics.startTimer();
+                Codecs.encode(codec, response, buffer);
+                metrics.encoded(encodeStart);
+                buffer.flip();
+                if (encoded != null && BinaryCodec.isEncoded(buffer)) {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.duplicate().get(bytes);
+                    encoded.add(bytes);
+                } else {
+                    encoded = null;
                 }
+                int bytes = buffer.remaining();
+                send(channel, buffer, remoteAddress);
+                metrics.sent(bytes);
+            } catch (IOException | RuntimeException e) {
+                encoded = null;
+                metrics.failed(request.getHead());
+                e.printStackTrace();
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
 
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                try (ObjectOutputStream oo = new ObjectOutputStream(outputStream)) {
-                    oo.writeObject(response);
-                    channel.send(ByteBuffer.wrap(outputStream.toByteArray()), remoteAddress);
-                } catch (IOException e) {
-                    e.printStackTrace();
+        if (encoded != null) {
+            List<Fragment> fragments = new ArrayList<>();
+            for (Message response : responses) {
+                if (response.getBody() instanceof Fragment) {
+                    fragments.add((Fragment) response.getBody());
                 }
-            }).run();
+            }
+            responseCache.put(cacheKey, new ResponseCache.Entry(version, encoded, fragments));
+        }
+    }
+
+    private void resend(DatagramChannel channel, ResponseCache.Entry cached, Message request,
+                        SocketAddress remoteAddress) {
+        if (!cached.getFragments().isEmpty()) {
+            synchronized (sentFragments) {
+                sentFragments.put(cached.getFragments().get(0).getSequenceId(), cached.getFragments());
+            }
+        }
+
+        for (byte[] datagram : cached.getDatagrams()) {
+            ByteBuffer buffer = bufferPool.acquire();
+            try {
+                buffer.put(datagram).flip();
+                BinaryCodec.readdress(buffer, request.getSession(), request.getId());
+                send(channel, buffer, remoteAddress);
+                metrics.sent(datagram.length);
+            } catch (IOException e) {
+                metrics.failed(request.getHead());
+                e.printStackTrace();
+            } finally {
+                bufferPool.release(buffer);
+            }
         }
     }
 
     @Override
     public void close() throws IOException {
-        channel.close();
+        unregisterMetrics();
+        if (replicator != null) {
+            replicator.close();
+        }
+        collection.removeListener(subscriptions);
+        subscriptions.close();
+        dispatcher.close();
+        for (Selector selector : selectors) {
+            selector.close();
+        }
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+        storage.close();
+        if (coldTier != null) {
+            coldTier.close();
+        }
     }
 
     private Message infoMessage() {
+        Snapshot snapshot = collection.current();
         return new Message(false, Message.Head.INFO,
-                String.format("%s of size %d", collection.getClass().getTypeName(), collection.size()));
+                String.format("%s of size %d, version %d%n%s%n%s", collection.getClass().getTypeName(),
+                        snapshot.size() + (coldTier == null ? 0 : coldTier.size()), snapshot.getVersion(),
+                        aggregates, capacityInfo()));
     }
 
-    private Message showMessage() {
-        List<CollectionElement> list;
-        synchronized (collection) {
-            list = new ArrayList<>(collection);
+    private String capacityInfo() {
+        if (collection.getEviction() == null) {
+            return "capacity: unbounded";
         }
+        return String.format("capacity: %d of %s elements, %d of %s bytes in memory, evicting %s%n%s",
+                collection.size(),
+                collection.getMaxElements() == Long.MAX_VALUE ? "unbounded" : collection.getMaxElements(),
+                collection.getBytes(), collection.getMaxBytes() == Long.MAX_VALUE ? "unbounded" : collection.getMaxBytes(),
+                collection.getEviction(), coldTier == null ? "cold tier: off" : coldTier);
+    }
 
-        list.sort(CollectionElement::compareTo);
-        return new Message(false, Message.Head.SHOW, list);
+    private Message statsMessage() {
+        return new Message(false, Message.Head.STATS,
+                String.format("%s%n%s%n%s%n%s%n%s%n%s", metrics, allocationMonitor, bufferPool,
+                        responseCache == null ? "response cache: off" : responseCache, subscriptions,
+                        replicator == null ? "replication: primary" : replicator));
     }
 
-    private void importCollection(Message msg) {
-        String text = msg.getBody().toString();
+    private void registerMetrics(int port) {
         try {
-            Object obj = xStream.fromXML(text);
-            if (obj instanceof Collection) {
-                Collection saved = (Collection) obj;
-                if (saved.stream().allMatch(o -> o instanceof CollectionElement)) {
-                    synchronized (collection) {
-                        collection.clear();
-                        collection.addAll(saved);
-                    }
+            metricsName = new ObjectName("lab6:type=ServerMetrics,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName);
+        } catch (JMException e) {
+            metricsName = null;
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException ignored) {
+        }
+        metricsName = null;
+    }
+
+    private List<Message> showMessages(Message.Head head, ShowRequest request) {
+        List<Fragment> fragments;
+        if (request.isResend()) {
+            List<Fragment> sent;
+            synchronized (sentFragments) {
+                sent = sentFragments.get(request.getSequenceId());
+            }
+            if (sent == null) {
+                return Collections.emptyList();
+            }
+
+            fragments = new ArrayList<>();
+            for (int index : request.getMissing()) {
+                if (index >= 0 && index < sent.size()) {
+                    fragments.add(sent.get(index));
                 }
             }
-        } catch (XStreamException ignored) {
+        } else {
+            Snapshot snapshot = collection.current();
+            long sequenceId = nextSequenceId.incrementAndGet();
+            fragments = request.getVersion() == snapshot.getVersion()
+                    ? Collections.singletonList(Fragment.notModified(sequenceId, snapshot.getVersion()))
+                    : split(sequenceId, snapshot.getVersion(), page(snapshot, request));
         }
+        return fragmentMessages(head, fragments);
     }
 
-    private void load() {
-        collection.clear();
-        Object obj;
-        synchronized (xStream) {
-            try {
-                obj = xStream.fromXML(file);
-            } catch (Exception e) {
-                System.err.println("Could not load file. Using empty collection");
-                return;
-            }
+    private List<Message> resultMessages(Message request, Function<Snapshot, List<CollectionElement>> search) {
+        if (request.getBody() instanceof ShowRequest) {
+            return showMessages(request.getHead(), (ShowRequest) request.getBody());
+        }
+        if (request.getHead() != Message.Head.QUERY && !(request.getBody() instanceof SpatialQuery)) {
+            return Collections.emptyList();
+        }
+
+        Snapshot snapshot = collection.current();
+        List<CollectionElement> result = search.apply(snapshot);
+        collection.accessed(result);
+        return fragmentMessages(request.getHead(), split(nextSequenceId.incrementAndGet(), snapshot.getVersion(), result));
+    }
+
+    private List<CollectionElement> page(Snapshot snapshot, ShowRequest request) {
+        long offset = Math.max(request.getOffset(), 0);
+        int limit = Math.max(request.getLimit(), 0);
+        if (coldTier == null) {
+            int from = (int) Math.min(offset, snapshot.size());
+            int to = (int) Math.min(from + (long) limit, snapshot.size());
+            return snapshot.slice(from, to);
         }
-        if (obj instanceof Collection) {
-            Collection saved = (Collection) obj;
-            if (saved.stream().allMatch(o -> o instanceof CollectionElement)) {
-                synchronized (collection) {
-                    collection.addAll(saved);
+
+        Comparator<CollectionElement> order = QueryExecutor.order(Query.Order.SIZE);
+        List<CollectionElement> page = new ArrayList<>();
+        try (ColdTier.Scan cold = coldTier.scan(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)) {
+            Iterator<CollectionElement> hot = snapshot.iterator();
+            CollectionElement nextHot = hot.hasNext() ? hot.next() : null;
+            CollectionElement nextCold = cold.hasNext() ? cold.next() : null;
+            for (long skipped = 0; (nextHot != null || nextCold != null) && page.size() < limit; ) {
+                CollectionElement element;
+                if (nextCold == null || nextHot != null && order.compare(nextHot, nextCold) <= 0) {
+                    element = nextHot;
+                    if (nextCold != null && nextCold.getId() == nextHot.getId()) {
+                        nextCold = cold.hasNext() ? cold.next() : null;
+                    }
+                    nextHot = hot.hasNext() ? hot.next() : null;
+                } else {
+                    element = nextCold;
+                    nextCold = cold.hasNext() ? cold.next() : null;
                 }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(element);
+                }
+            }
+        }
+        return page;
+    }
+
+    private static List<CollectionElement> visible(Snapshot snapshot, List<CollectionElement> hits) {
+        List<CollectionElement> result = new ArrayList<>(hits.size());
+        for (CollectionElement hit : hits) {
+            if (snapshot.includes(hit)) {
+                result.add(hit);
             }
         }
+        return result;
+    }
+
+    private List<CollectionElement> query(Query query, Snapshot snapshot) {
+        List<CollectionElement> hot = QueryExecutor.execute(query, snapshot);
+        if (coldTier == null) {
+            return hot;
+        }
+
+        Comparator<CollectionElement> order = QueryExecutor.order(query.getOrder());
+        List<CollectionElement> cold = coldTier.collect(
+                query.getMinSize() == null ? Double.NEGATIVE_INFINITY : query.getMinSize(),
+                query.getMaxSize() == null ? Double.POSITIVE_INFINITY : query.getMaxSize(),
+                query::matches, query.getOrder() == Query.Order.SIZE ? null : order, Math.max(query.getLimit(), 0));
+        Set<Long> ids = new HashSet<>();
+        hot.forEach(element -> ids.add(element.getId()));
+        cold.removeIf(element -> ids.contains(element.getId()));
+        return ShardRouter.merge(Arrays.asList(hot, cold), order, 0, Math.max(query.getLimit(), 0));
+    }
+
+    private List<Fragment> split(long sequenceId, long version, List<CollectionElement> elements) {
+        List<Fragment> fragments = Fragment.split(sequenceId, version, elements);
+        synchronized (sentFragments) {
+            sentFragments.put(sequenceId, fragments);
+        }
+        return fragments;
+    }
+
+    private static List<Message> fragmentMessages(Message.Head head, List<Fragment> fragments) {
+        List<Message> messages = new ArrayList<>(fragments.size());
+        for (Fragment fragment : fragments) {
+            messages.add(new Message(false, head, fragment));
+        }
+        return messages;
+    }
+
+    private ImportProgress importChunk(ImportChunk chunk) {
+        ImportSession session;
+        synchronized (imports) {
+            long now = System.currentTimeMillis();
+            imports.values().removeIf(existing -> existing.isExpired(now));
+            session = imports.computeIfAbsent(chunk.getImportId(),
+                    importId -> new ImportSession(importId, xStream, collection));
+        }
+        return session.offer(chunk);
+    }
+
+    private void importCollection(Message msg) {
+        if (msg.getBody() == null) {
+            return;
+        }
+
+        List<CollectionElement> elements = new ArrayList<>();
+        try (InputStream in = new ByteArrayInputStream(msg.getBody().toString().getBytes(StandardCharsets.UTF_8))) {
+            XmlStorage.stream(xStream, in, 0x1000, elements::addAll);
+            collection.replaceAll(elements);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            storage.load(collection);
+            metrics.loaded(System.nanoTime() - start);
+        } catch (IOException e) {
+            collection.clear();
+            System.err.println("Could not load file. Using empty collection");
+        }
     }
 
     private void save() {
-        synchronized (file) {
-            try (OutputStream outputStream = new FileOutputStream(file)) {
-                synchronized (xStream) {
-                    synchronized (collection) {
-                        xStream.toXML(new ArrayList<>(collection), outputStream);
-                    }
+        long start = System.nanoTime();
+        try {
+            storage.save(collection);
+            metrics.saved(System.nanoTime() - start);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private BatchResult applyBatch(Batch batch) {
+        List<CollectionElement> notInMemory = new ArrayList<>();
+        BatchResult result = collection.atomically(() -> {
+            int added = 0;
+            int removed = 0;
+            for (Batch.Operation operation : batch.getOperations()) {
+                if (operation.getElement() == null || !operation.getElement().isValid()) {
+                    continue;
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                if (operation.isAdd()) {
+                    collection.add(operation.getElement());
+                    added++;
+                } else if (collection.remove(operation.getElement())) {
+                    removed++;
+                } else if (coldTier != null) {
+                    notInMemory.add(operation.getElement());
+                }
+            }
+            return new BatchResult(added, removed);
+        });
+        if (notInMemory.isEmpty()) {
+            return result;
+        }
+
+        int removed = result.getRemoved();
+        for (CollectionElement element : notInMemory) {
+            if (removedCold(coldTier.remove(element)) != null) {
+                removed++;
             }
         }
+        return new BatchResult(result.getAdded(), removed);
     }
 
-    private void removeFirst() {
-        collection.poll();
+    private boolean remove(CollectionElement element) {
+        return collection.remove(element) || coldTier != null && removedCold(coldTier.remove(element)) != null;
+    }
+
+    private CollectionElement removeById(long id) {
+        CollectionElement removed = collection.removeById(id);
+        return removed != null || coldTier == null ? removed : removedCold(coldTier.removeById(id));
+    }
+
+    private CollectionElement removeFirst() {
+        if (coldTier == null) {
+            return collection.pollFirst();
+        }
+        Comparator<CollectionElement> order = QueryExecutor.order(Query.Order.SIZE);
+        while (true) {
+            CollectionElement cold = coldTier.first();
+            if (cold == null) {
+                return collection.pollFirst();
+            }
+            CollectionElement hot = collection.atomically(() -> {
+                CollectionElement first = collection.first();
+                return first != null && order.compare(first, cold) < 0 ? collection.pollFirst() : null;
+            });
+            CollectionElement removed = hot != null ? hot : removedCold(coldTier.removeById(cold.getId()));
+            if (removed != null) {
+                return removed;
+            }
+        }
+    }
+
+    private CollectionElement removeLast() {
+        if (coldTier == null) {
+            return collection.pollLast();
+        }
+        Comparator<CollectionElement> order = QueryExecutor.order(Query.Order.SIZE);
+        while (true) {
+            CollectionElement cold = coldTier.last();
+            if (cold == null) {
+                return collection.pollLast();
+            }
+            CollectionElement hot = collection.atomically(() -> {
+                CollectionElement last = collection.last();
+                return last != null && order.compare(last, cold) > 0 ? collection.pollLast() : null;
+            });
+            CollectionElement removed = hot != null ? hot : removedCold(coldTier.removeById(cold.getId()));
+            if (removed != null) {
+                return removed;
+            }
+        }
     }
 
-    private void removeLast() {
-        synchronized (collection) {
-            Optional<CollectionElement> element = collection.stream().max(CollectionElement::compareTo);
-            element.map(collection::remove);
+    private CollectionElement removedCold(CollectionElement element) {
+        if (element != null) {
+            collection.removedEvicted(element);
         }
+        return element;
     }
 }
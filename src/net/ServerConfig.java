@@ -0,0 +1,348 @@
+package net;
+
+import cli.InvalidCommandLineArgumentException;
+import collection.EvictionPolicy;
+import collection.SortedCollection;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class ServerConfig {
+    private int port;
+    private File saveFile;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private boolean virtualThreads = false;
+    private Map<Message.Head, Integer> concurrencyLimits = new EnumMap<>(Message.Head.class);
+    private String storage = "journal";
+    private int syncIntervalMillis = 50;
+    private int compactAfter = 100_000;
+    private int gridCellSize = 16;
+    private SortedCollection.Layout elementStore = SortedCollection.Layout.OBJECTS;
+    private int metricsSampleRate = 0;
+    private int receivers = 1;
+    private int responseCacheKilobytes = 16 * 1024;
+    private InetSocketAddress primary;
+    private int shardIndex = 0;
+    private int shardCount = 1;
+    private int capacity = 0;
+    private int capacityMegabytes = 0;
+    private String eviction = "smallest";
+    private boolean coldTier = false;
+
+    public ServerConfig(int port, File saveFile) {
+        this.port = port;
+        this.saveFile = saveFile;
+        concurrencyLimits.put(Message.Head.LOAD, 1);
+        concurrencyLimits.put(Message.Head.SAVE, 1);
+        concurrencyLimits.put(Message.Head.IMPORT, 1);
+    }
+
+    public static ServerConfig fromArgs(String[] args) throws InvalidCommandLineArgumentException {
+        if (args.length < 2) {
+            throw new InvalidCommandLineArgumentException("You should specify port");
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            throw new InvalidCommandLineArgumentException("Port should be a number");
+        }
+
+        if (port < 1024 || port > 65_535) {
+            throw new InvalidCommandLineArgumentException("Port should be between 1024 and 65 535");
+        }
+
+        String envname = "LAB6_SAVE_PATH";
+        String envval = System.getenv(envname);
+        if (envval == null || envval.isEmpty()) {
+            throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_SAVE_PATH' should be set");
+        }
+
+        ServerConfig config = new ServerConfig(port, new File(envval));
+        config.setWorkers(intEnv("LAB6_WORKERS", config.getWorkers()));
+        config.setQueueCapacity(intEnv("LAB6_QUEUE_CAPACITY", config.getQueueCapacity()));
+        config.setReceivers(intEnv("LAB6_RECEIVERS", config.getReceivers()));
+        config.setVirtualThreads(Boolean.parseBoolean(System.getenv("LAB6_VIRTUAL_THREADS")));
+        config.setConcurrencyLimit(Message.Head.LOAD, intEnv("LAB6_LOAD_LIMIT", 1));
+        config.setConcurrencyLimit(Message.Head.SAVE, intEnv("LAB6_SAVE_LIMIT", 1));
+        config.setConcurrencyLimit(Message.Head.IMPORT, intEnv("LAB6_IMPORT_LIMIT", 1));
+
+        String storage = System.getenv("LAB6_STORAGE");
+        if (storage != null && !storage.isEmpty()) {
+            if (!"journal".equals(storage) && !"xml".equals(storage) && !"columnar".equals(storage)) {
+                throw new InvalidCommandLineArgumentException(
+                        "Environment variable 'LAB6_STORAGE' should be 'journal', 'xml' or 'columnar'");
+            }
+            config.setStorage(storage);
+        }
+        config.setSyncIntervalMillis(intEnv("LAB6_SYNC_INTERVAL", config.getSyncIntervalMillis()));
+        config.setCompactAfter(intEnv("LAB6_COMPACT_AFTER", config.getCompactAfter()));
+        config.setGridCellSize(intEnv("LAB6_GRID_CELL", config.getGridCellSize()));
+        config.setMetricsSampleRate(intEnv("LAB6_METRICS_SAMPLE", config.getMetricsSampleRate(), 0));
+        config.setResponseCacheKilobytes(intEnv("LAB6_RESPONSE_CACHE_KB", config.getResponseCacheKilobytes(), 0));
+
+        String elementStore = System.getenv("LAB6_ELEMENT_STORE");
+        if (elementStore != null && !elementStore.isEmpty()) {
+            if ("objects".equals(elementStore)) {
+                config.setElementStore(SortedCollection.Layout.OBJECTS);
+            } else if ("columnar".equals(elementStore)) {
+                config.setElementStore(SortedCollection.Layout.COLUMNAR);
+            } else {
+                throw new InvalidCommandLineArgumentException(
+                        "Environment variable 'LAB6_ELEMENT_STORE' should be 'objects' or 'columnar'");
+            }
+        }
+        config.setPrimary(addressEnv("LAB6_PRIMARY"));
+
+        String shard = System.getenv("LAB6_SHARD");
+        if (shard != null && !shard.isEmpty()) {
+            String[] parts = shard.split("/");
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException();
+                }
+                config.setShard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_SHARD' should be <index>/<count>");
+            }
+            if (config.getShardIndex() < 0 || config.getShardIndex() >= config.getShardCount()) {
+                throw new InvalidCommandLineArgumentException(
+                        "Shard index in 'LAB6_SHARD' should be between 0 and the shard count - 1");
+            }
+        }
+
+        config.setCapacity(intEnv("LAB6_CAPACITY", config.getCapacity(), 0));
+        config.setCapacityMegabytes(intEnv("LAB6_CAPACITY_MB", config.getCapacityMegabytes(), 0));
+        String eviction = System.getenv("LAB6_EVICTION");
+        if (eviction != null && !eviction.isEmpty()) {
+            if (EvictionPolicy.forName(eviction) == null) {
+                throw new InvalidCommandLineArgumentException(
+                        "Environment variable 'LAB6_EVICTION' should be 'smallest', 'oldest' or 'lru'");
+            }
+            config.setEviction(eviction);
+        }
+        config.setColdTier(Boolean.parseBoolean(System.getenv("LAB6_COLD_TIER")));
+        return config;
+    }
+
+    static InetSocketAddress addressEnv(String envname) throws InvalidCommandLineArgumentException {
+        String envval = System.getenv(envname);
+        if (envval == null || envval.isEmpty()) {
+            return null;
+        }
+
+        return address(envname, envval);
+    }
+
+    static InetSocketAddress address(String envname, String value) throws InvalidCommandLineArgumentException {
+        int colon = value.lastIndexOf(':');
+        try {
+            if (colon <= 0) {
+                throw new NumberFormatException();
+            }
+            InetSocketAddress address = new InetSocketAddress(value.substring(0, colon).trim(),
+                    Integer.parseInt(value.substring(colon + 1).trim()));
+            if (address.isUnresolved()) {
+                throw new InvalidCommandLineArgumentException("Could not resolve host in '" + envname + "'");
+            }
+            return address;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCommandLineArgumentException("Environment variable '" + envname + "' should be <host>:<port>");
+        }
+    }
+
+    static int intEnv(String envname, int defaultValue) throws InvalidCommandLineArgumentException {
+        return intEnv(envname, defaultValue, 1);
+    }
+
+    static int intEnv(String envname, int defaultValue, int minValue) throws InvalidCommandLineArgumentException {
+        String envval = System.getenv(envname);
+        if (envval == null || envval.isEmpty()) {
+            return defaultValue;
+        }
+
+        int value;
+        try {
+            value = Integer.parseInt(envval.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidCommandLineArgumentException("Environment variable '" + envname + "' should be a number");
+        }
+
+        if (value < minValue) {
+            throw new InvalidCommandLineArgumentException(minValue == 0
+                    ? "Environment variable '" + envname + "' should not be negative"
+                    : "Environment variable '" + envname + "' should be positive");
+        }
+
+        return value;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public File getSaveFile() {
+        return saveFile;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getReceivers() {
+        return receivers;
+    }
+
+    public int getResponseCacheKilobytes() {
+        return responseCacheKilobytes;
+    }
+
+    public InetSocketAddress getPrimary() {
+        return primary;
+    }
+
+    public boolean isReplica() {
+        return primary != null;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCapacityMegabytes() {
+        return capacityMegabytes;
+    }
+
+    public boolean isBounded() {
+        return capacity > 0 || capacityMegabytes > 0;
+    }
+
+    public String getEviction() {
+        return eviction;
+    }
+
+    public boolean isColdTier() {
+        return coldTier;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public Map<Message.Head, Integer> getConcurrencyLimits() {
+        return concurrencyLimits;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public int getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public int getCompactAfter() {
+        return compactAfter;
+    }
+
+    public int getGridCellSize() {
+        return gridCellSize;
+    }
+
+    public SortedCollection.Layout getElementStore() {
+        return elementStore;
+    }
+
+    public int getMetricsSampleRate() {
+        return metricsSampleRate;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setReceivers(int receivers) {
+        this.receivers = receivers;
+    }
+
+    public void setResponseCacheKilobytes(int responseCacheKilobytes) {
+        this.responseCacheKilobytes = responseCacheKilobytes;
+    }
+
+    public void setPrimary(InetSocketAddress primary) {
+        this.primary = primary;
+    }
+
+    public void setShard(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setCapacityMegabytes(int capacityMegabytes) {
+        this.capacityMegabytes = capacityMegabytes;
+    }
+
+    public void setEviction(String eviction) {
+        this.eviction = eviction;
+    }
+
+    public void setColdTier(boolean coldTier) {
+        this.coldTier = coldTier;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public void setStorage(String storage) {
+        this.storage = storage;
+    }
+
+    public void setSyncIntervalMillis(int syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public void setCompactAfter(int compactAfter) {
+        this.compactAfter = compactAfter;
+    }
+
+    public void setGridCellSize(int gridCellSize) {
+        this.gridCellSize = gridCellSize;
+    }
+
+    public void setElementStore(SortedCollection.Layout elementStore) {
+        this.elementStore = elementStore;
+    }
+
+    public void setMetricsSampleRate(int metricsSampleRate) {
+        this.metricsSampleRate = metricsSampleRate;
+    }
+
+    public void setConcurrencyLimit(Message.Head head, int limit) {
+        concurrencyLimits.put(head, limit);
+    }
+}
@@ -0,0 +1,252 @@
+package net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final Message.Head[] HEADS = Message.Head.values();
+
+    private volatile int sampleRate;
+    private final IntSupplier collectionSize;
+    private final LongAdder[] requests = adders(HEADS.length);
+    private final LongAdder[] errors = adders(HEADS.length);
+    private final LatencyHistogram[] handle = new LatencyHistogram[HEADS.length];
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram encode = new LatencyHistogram();
+    private final LatencyHistogram save = new LatencyHistogram();
+    private final LatencyHistogram load = new LatencyHistogram();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder datagramsIn = new LongAdder();
+    private final LongAdder datagramsOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile long lastSaveNanos = -1;
+    private volatile long lastLoadNanos = -1;
+
+    public ServerMetrics(int sampleRate, IntSupplier collectionSize) {
+        this.sampleRate = sampleRate;
+        this.collectionSize = collectionSize;
+        for (int i = 0; i < handle.length; i++) {
+            handle[i] = new LatencyHistogram();
+        }
+    }
+
+    public long startTimer() {
+        int rate = sampleRate;
+        if (rate == 0 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    public void received(int bytes) {
+        datagramsIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    public void sent(int bytes) {
+        datagramsOut.increment();
+        bytesOut.add(bytes);
+    }
+
+    public void decoded(long start) {
+        if (start != 0) {
+            decode.record(System.nanoTime() - start);
+        }
+    }
+
+    public void decodeFailed() {
+        decodeErrors.increment();
+    }
+
+    public void handled(Message.Head head, long start) {
+        requests[head.ordinal()].increment();
+        if (start != 0) {
+            handle[head.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    public void encoded(long start) {
+        if (start != 0) {
+            encode.record(System.nanoTime() - start);
+        }
+    }
+
+    public void failed(Message.Head head) {
+        errors[head.ordinal()].increment();
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public void saved(long nanos) {
+        save.record(nanos);
+        lastSaveNanos = nanos;
+    }
+
+    public void loaded(long nanos) {
+        load.record(nanos);
+        lastLoadNanos = nanos;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return sums(requests);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return sums(errors);
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    @Override
+    public long getDatagramsIn() {
+        return datagramsIn.sum();
+    }
+
+    @Override
+    public long getDatagramsOut() {
+        return datagramsOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public int getCollectionSize() {
+        return collectionSize.getAsInt();
+    }
+
+    @Override
+    public Map<String, Double> getHandleP50Micros() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Double> getHandleP99Micros() {
+        return percentiles(99);
+    }
+
+    @Override
+    public Map<String, Double> getHandleP999Micros() {
+        return percentiles(99.9);
+    }
+
+    @Override
+    public double getDecodeP99Micros() {
+        return decode.percentileMicros(99);
+    }
+
+    @Override
+    public double getEncodeP99Micros() {
+        return encode.percentileMicros(99);
+    }
+
+    @Override
+    public long getLastSaveMillis() {
+        long nanos = lastSaveNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getLastLoadMillis() {
+        long nanos = lastLoadNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        if (sampleRate < 0) {
+            throw new IllegalArgumentException("Sample rate should not be negative");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("collection size: %d%n", getCollectionSize()));
+        builder.append(String.format("datagrams: %d in (%d bytes), %d out (%d bytes), %d undecodable%n",
+                getDatagramsIn(), getBytesIn(), getDatagramsOut(), getBytesOut(), getDecodeErrors()));
+        builder.append(String.format("response cache: %d hits, %d misses%n", getCacheHits(), getCacheMisses()));
+        builder.append(String.format("latency sampling: %s%n",
+                sampleRate == 0 ? "off" : "1 in " + sampleRate + " requests"));
+        for (Message.Head head : HEADS) {
+            long count = requests[head.ordinal()].sum();
+            long failures = errors[head.ordinal()].sum();
+            if (count > 0 || failures > 0) {
+                builder.append(String.format("%s: %d requests, %d errors, handle %s%n",
+                        head, count, failures, handle[head.ordinal()]));
+            }
+        }
+        builder.append(String.format("decode: %s%n", decode));
+        builder.append(String.format("encode: %s%n", encode));
+        builder.append(String.format("save: %s%n", save));
+        builder.append(String.format("load: %s", load));
+        return builder.toString();
+    }
+
+    private static Map<String, Long> sums(LongAdder[] adders) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Message.Head head : HEADS) {
+            result.put(head.name(), adders[head.ordinal()].sum());
+        }
+        return result;
+    }
+
+    private Map<String, Double> percentiles(double percentile) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Message.Head head : HEADS) {
+            if (handle[head.ordinal()].getCount() > 0) {
+                result.put(head.name(), handle[head.ordinal()].percentileMicros(percentile));
+            }
+        }
+        return result;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,43 @@
+package net;
+
+import java.util.Map;
+
+public interface ServerMetricsMXBean {
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    long getDecodeErrors();
+
+    long getDatagramsIn();
+
+    long getDatagramsOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    int getCollectionSize();
+
+    Map<String, Double> getHandleP50Micros();
+
+    Map<String, Double> getHandleP99Micros();
+
+    Map<String, Double> getHandleP999Micros();
+
+    double getDecodeP99Micros();
+
+    double getEncodeP99Micros();
+
+    long getLastSaveMillis();
+
+    long getLastLoadMillis();
+
+    int getSampleRate();
+
+    void setSampleRate(int sampleRate);
+}
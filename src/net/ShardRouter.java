@@ -0,0 +1,273 @@
+package net;
+
+import cli.InvalidCommandLineArgumentException;
+import collection.CollectionElement;
+import collection.Position;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public class ShardRouter implements Connection {
+    private final List<ClientEngine> shards = new ArrayList<>();
+    private final List<InetSocketAddress> addresses;
+    private final double[] bounds;
+
+    public ShardRouter(List<InetSocketAddress> addresses, double[] bounds, MessageCodec codec, int window)
+            throws SocketException {
+        if (addresses.isEmpty() || bounds.length != addresses.size() - 1) {
+            throw new IllegalArgumentException("There should be one bound less than shards");
+        }
+        this.addresses = addresses;
+        this.bounds = bounds.clone();
+        for (InetSocketAddress address : addresses) {
+            shards.add(new ClientEngine(address.getAddress(), address.getPort(), codec, window));
+        }
+    }
+
+    public static ShardRouter fromEnv(MessageCodec codec, int window)
+            throws InvalidCommandLineArgumentException, SocketException {
+        String shards = System.getenv("LAB6_SHARDS");
+        if (shards == null || shards.isEmpty()) {
+            return null;
+        }
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String shard : shards.split(",")) {
+            addresses.add(ServerConfig.address("LAB6_SHARDS", shard.trim()));
+        }
+
+        String envval = System.getenv("LAB6_SHARD_BOUNDS");
+        String[] words = envval == null || envval.trim().isEmpty() ? new String[0] : envval.split(",");
+        if (words.length != addresses.size() - 1) {
+            throw new InvalidCommandLineArgumentException(
+                    "Environment variable 'LAB6_SHARD_BOUNDS' should list one size bound less than 'LAB6_SHARDS'");
+        }
+        double[] bounds = new double[words.length];
+        for (int i = 0; i < words.length; i++) {
+            try {
+                bounds[i] = Double.parseDouble(words[i].trim());
+            } catch (NumberFormatException e) {
+                throw new InvalidCommandLineArgumentException("Environment variable 'LAB6_SHARD_BOUNDS' should list numbers");
+            }
+            if (i > 0 && !(bounds[i] > bounds[i - 1])) {
+                throw new InvalidCommandLineArgumentException("Bounds in 'LAB6_SHARD_BOUNDS' should be ascending");
+            }
+        }
+        return new ShardRouter(addresses, bounds, codec, window);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int shardFor(double size) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (size < bounds[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    public int shardForId(long id) {
+        return (int) Math.floorMod(id, (long) shards.size());
+    }
+
+    @Override
+    public CompletableFuture<Message> request(Message message) {
+        Object body = message.getBody();
+        switch (message.getHead()) {
+            case ADD:
+            case REMOVE:
+                int shard = body instanceof CollectionElement ? shardFor(((CollectionElement) body).getSize()) : 0;
+                return send(shard, message);
+            case REMOVE_ID:
+                return send(body instanceof Long ? shardForId((Long) body) : 0, message);
+            case REMOVE_FIRST:
+                return edge(message, 0, 1);
+            case REMOVE_LAST:
+                return edge(message, shards.size() - 1, -1);
+            case BATCH:
+                return body instanceof Batch ? batch(message, (Batch) body) : send(0, message);
+            case INFO:
+            case STATS:
+                return all(message, shardIndexes(), responses -> {
+                    StringBuilder text = new StringBuilder();
+                    for (int i = 0; i < responses.size(); i++) {
+                        text.append(i == 0 ? "" : System.lineSeparator()).append(String.format("shard %d (%s): %s",
+                                i, addresses.get(i), responses.get(i).getBody()));
+                    }
+                    return new Message(false, message.getHead(), text.toString());
+                });
+            case LOAD:
+            case SAVE:
+            case STOP:
+                return all(message, shardIndexes(), responses -> responses.get(0));
+            default:
+                CompletableFuture<Message> future = new CompletableFuture<>();
+                future.completeExceptionally(new IOException(message.getHead() + " is not supported by a sharded cluster"));
+                return future;
+        }
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> show(ShowRequest request) {
+        long offset = Math.max(request.getOffset(), 0);
+        int limit = Math.max(request.getLimit(), 0);
+        ShowRequest perShard = new ShowRequest(0, (int) Math.min(offset + limit, Integer.MAX_VALUE));
+        return gather(shardIndexes(), shard -> shards.get(shard).show(perShard),
+                QueryExecutor.order(Query.Order.SIZE), offset, limit);
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> query(Query query) {
+        List<Integer> targets = new ArrayList<>();
+        int from = query.getMinSize() == null ? 0 : shardFor(query.getMinSize());
+        int to = query.getMaxSize() == null ? shards.size() - 1 : shardFor(query.getMaxSize());
+        for (int shard = from; shard <= to; shard++) {
+            targets.add(shard);
+        }
+        return gather(targets, shard -> shards.get(shard).query(query),
+                QueryExecutor.order(query.getOrder()), 0, query.getLimit());
+    }
+
+    @Override
+    public CompletableFuture<ShowResult> spatial(Message.Head head, SpatialQuery query) {
+        if (head != Message.Head.NEAREST) {
+            return gather(shardIndexes(), shard -> shards.get(shard).spatial(head, query), null, 0, Integer.MAX_VALUE);
+        }
+        Comparator<CollectionElement> byDistance = Comparator.comparingDouble(element -> {
+            Position position = element.getPosition();
+            double dx = position.getX() - query.getX();
+            double dy = position.getY() - query.getY();
+            return dx * dx + dy * dy;
+        });
+        return gather(shardIndexes(), shard -> shards.get(shard).spatial(head, query), byDistance, 0, query.getCount());
+    }
+
+    @Override
+    public void drain() {
+        shards.forEach(ClientEngine::drain);
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(ClientEngine::close);
+    }
+
+    private List<Integer> shardIndexes() {
+        List<Integer> indexes = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private CompletableFuture<Message> send(int shard, Message message) {
+        return shards.get(shard).request(new Message(true, message.getHead(), message.getBody()));
+    }
+
+    private CompletableFuture<Message> edge(Message message, int shard, int step) {
+        return send(shard, message).thenCompose(response -> {
+            int next = shard + step;
+            if (response.getBody() != null || next < 0 || next >= shards.size()) {
+                return CompletableFuture.completedFuture(response);
+            }
+            return edge(message, next, step);
+        });
+    }
+
+    private CompletableFuture<Message> batch(Message message, Batch batch) {
+        Map<Integer, Batch> parts = new TreeMap<>();
+        for (Batch.Operation operation : batch.getOperations()) {
+            int shard = operation.getElement() == null ? 0 : shardFor(operation.getElement().getSize());
+            parts.computeIfAbsent(shard, k -> new Batch()).getOperations().add(operation);
+        }
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        parts.forEach((shard, part) -> futures.add(send(shard, new Message(true, Message.Head.BATCH, part))));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            int added = 0;
+            int removed = 0;
+            for (CompletableFuture<Message> future : futures) {
+                Object body = future.join().getBody();
+                if (body instanceof BatchResult) {
+                    added += ((BatchResult) body).getAdded();
+                    removed += ((BatchResult) body).getRemoved();
+                }
+            }
+            return new Message(false, Message.Head.BATCH, new BatchResult(added, removed));
+        });
+    }
+
+    private CompletableFuture<Message> all(Message message, List<Integer> targets,
+                                           Function<List<Message>, Message> combine) {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int shard : targets) {
+            futures.add(send(shard, message));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Message> responses = new ArrayList<>(futures.size());
+            futures.forEach(future -> responses.add(future.join()));
+            return combine.apply(responses);
+        });
+    }
+
+    private CompletableFuture<ShowResult> gather(List<Integer> targets,
+                                                 Function<Integer, CompletableFuture<ShowResult>> request,
+                                                 Comparator<CollectionElement> order, long offset, int limit) {
+        List<CompletableFuture<ShowResult>> futures = new ArrayList<>();
+        for (int shard : targets) {
+            futures.add(request.apply(shard));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            long version = 0;
+            List<List<CollectionElement>> parts = new ArrayList<>(futures.size());
+            for (CompletableFuture<ShowResult> future : futures) {
+                ShowResult result = future.join();
+                version += result.getVersion();
+                parts.add(result.isModified() ? result.getElements() : Collections.emptyList());
+            }
+            return new ShowResult(version, merge(parts, order, offset, limit));
+        });
+    }
+
+    static List<CollectionElement> merge(List<List<CollectionElement>> parts, Comparator<CollectionElement> order,
+                                         long offset, int limit) {
+        List<CollectionElement> result = new ArrayList<>();
+        if (order == null) {
+            parts.forEach(result::addAll);
+            return result;
+        }
+
+        PriorityQueue<int[]> heads = new PriorityQueue<>(parts.size() + 1,
+                (a, b) -> order.compare(parts.get(a[0]).get(a[1]), parts.get(b[0]).get(b[1])));
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        for (long skipped = 0; !heads.isEmpty() && result.size() < limit; ) {
+            int[] head = heads.poll();
+            List<CollectionElement> part = parts.get(head[0]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(part.get(head[1]));
+            }
+            if (++head[1] < part.size()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package net;
+
+import java.io.Serializable;
+
+public class ShowRequest implements Serializable {
+    private long offset;
+    private int limit;
+    private long sequenceId;
+    private int[] missing;
+    private long version;
+
+    public ShowRequest(long offset, int limit) {
+        this(offset, limit, -1);
+    }
+
+    public ShowRequest(long offset, int limit, long version) {
+        this(offset, limit, 0, new int[0], version);
+    }
+
+    public ShowRequest(long offset, int limit, long sequenceId, int[] missing, long version) {
+        this.offset = offset;
+        this.limit = limit;
+        this.sequenceId = sequenceId;
+        this.missing = missing;
+        this.version = version;
+    }
+
+    public static ShowRequest all() {
+        return new ShowRequest(0, Integer.MAX_VALUE);
+    }
+
+    public static ShowRequest resend(long sequenceId, int[] missing) {
+        return new ShowRequest(0, 0, sequenceId, missing, -1);
+    }
+
+    public boolean isResend() {
+        return sequenceId != 0;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getSequenceId() {
+        return sequenceId;
+    }
+
+    public int[] getMissing() {
+        return missing;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,27 @@
+package net;
+
+import collection.CollectionElement;
+
+import java.util.List;
+
+public class ShowResult {
+    private final long version;
+    private final List<CollectionElement> elements;
+
+    public ShowResult(long version, List<CollectionElement> elements) {
+        this.version = version;
+        this.elements = elements;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isModified() {
+        return elements != null;
+    }
+
+    public List<CollectionElement> getElements() {
+        return elements;
+    }
+}
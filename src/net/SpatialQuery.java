@@ -0,0 +1,71 @@
+package net;
+
+import java.io.Serializable;
+
+public class SpatialQuery implements Serializable {
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private double radius;
+    private int count;
+
+    public SpatialQuery(double minX, double minY, double maxX, double maxY, double radius, int count) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.radius = radius;
+        this.count = count;
+    }
+
+    public static SpatialQuery within(double minX, double minY, double maxX, double maxY) {
+        return new SpatialQuery(minX, minY, maxX, maxY, 0, 0);
+    }
+
+    public static SpatialQuery radius(double x, double y, double radius) {
+        return new SpatialQuery(x, y, x, y, radius, 0);
+    }
+
+    public static SpatialQuery nearest(double x, double y, int count) {
+        return new SpatialQuery(x, y, x, y, 0, count);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public double getX() {
+        return minX;
+    }
+
+    public double getY() {
+        return minY;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ box: (%f; %f) - (%f; %f); radius: %f; count: %d }",
+                minX, minY, maxX, maxY, radius, count);
+    }
+}
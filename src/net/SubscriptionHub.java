@@ -0,0 +1,215 @@
+package net;
+
+import collection.CollectionElement;
+import collection.CollectionListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+class SubscriptionHub implements CollectionListener, Runnable, Closeable {
+    static final long LEASE_MILLIS = 60_000;
+    private static final int MAX_BACKLOG = 4096;
+    private static final int MAX_RETAINED = 0x10000;
+    private static final int CHANGE_OVERHEAD = 24;
+
+    interface Sender {
+        void send(MessageCodec codec, Message message, SocketAddress address) throws IOException;
+    }
+
+    private final LongSupplier version;
+    private final Sender sender;
+    private final Map<SocketAddress, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Deque<ChangeSet.Change> backlog = new ArrayDeque<>();
+    private final Deque<ChangeSet.Change> retained = new ArrayDeque<>();
+    private final Thread publisher;
+    private long sequence = 0;
+    private long pushed = 0;
+    private long resets = 0;
+    private volatile boolean keepEvicted = false;
+    private volatile boolean shouldRun = true;
+
+    SubscriptionHub(LongSupplier version, Sender sender) {
+        this.version = version;
+        this.sender = sender;
+        publisher = new Thread(this, "publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    long subscribe(SocketAddress address, long session, MessageCodec codec) {
+        subscribers.put(address, new Subscriber(session, codec, System.currentTimeMillis() + LEASE_MILLIS));
+        return getSequence();
+    }
+
+    void unsubscribe(SocketAddress address) {
+        subscribers.remove(address);
+    }
+
+    void setKeepEvicted(boolean keepEvicted) {
+        this.keepEvicted = keepEvicted;
+    }
+
+    synchronized long getSequence() {
+        return sequence;
+    }
+
+    synchronized ChangeSet changesFrom(long from) {
+        ChangeSet result = new ChangeSet(sequence);
+        if (from > sequence) {
+            return result;
+        }
+        if (retained.isEmpty() || retained.peekFirst().getSequence() > from) {
+            result.getChanges().add(new ChangeSet.Change(ChangeSet.Kind.RESET, sequence, version.getAsLong(), null));
+            return result;
+        }
+
+        Iterator<ChangeSet.Change> changes = retained.iterator();
+        for (long skipped = retained.peekFirst().getSequence(); skipped < from; skipped++) {
+            changes.next();
+        }
+        pack(changes, result.getChanges());
+        return result;
+    }
+
+    @Override
+    public void added(CollectionElement element) {
+        enqueue(ChangeSet.Kind.ADDED, element);
+    }
+
+    @Override
+    public void removed(CollectionElement element) {
+        enqueue(ChangeSet.Kind.REMOVED, element);
+    }
+
+    @Override
+    public void cleared() {
+        enqueue(ChangeSet.Kind.RESET, null);
+    }
+
+    @Override
+    public void evicted(List<CollectionElement> elements) {
+        if (!keepEvicted) {
+            elements.forEach(this::removed);
+        }
+    }
+
+    @Override
+    public void removedEvicted(CollectionElement element) {
+        removed(element);
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public void run() {
+        while (shouldRun) {
+            List<ChangeSet.Change> changes;
+            long latest;
+            synchronized (this) {
+                expire();
+                while (shouldRun && backlog.isEmpty()) {
+                    try {
+                        wait(TimeUnit.SECONDS.toMillis(1));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    expire();
+                }
+                changes = new ArrayList<>();
+                pack(backlog.iterator(), changes);
+                for (int i = 0; i < changes.size(); i++) {
+                    backlog.poll();
+                }
+                pushed += changes.size();
+                latest = sequence;
+            }
+            if (!changes.isEmpty()) {
+                publish(new ChangeSet(changes, latest));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        shouldRun = false;
+        publisher.interrupt();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("subscriptions: %d subscribers, sequence %d, %d changes pushed, %d resets, %d queued, %d retained",
+                subscribers.size(), sequence, pushed, resets, backlog.size(), retained.size());
+    }
+
+    private synchronized void enqueue(ChangeSet.Kind kind, CollectionElement element) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        if (kind == ChangeSet.Kind.RESET || backlog.size() >= MAX_BACKLOG) {
+            backlog.clear();
+            retained.clear();
+            resets++;
+            kind = ChangeSet.Kind.RESET;
+            element = null;
+        }
+        ChangeSet.Change change = new ChangeSet.Change(kind, ++sequence, version.getAsLong(), element);
+        backlog.add(change);
+        retained.add(change);
+        if (retained.size() > MAX_RETAINED) {
+            retained.poll();
+        }
+        notifyAll();
+    }
+
+    private static void pack(Iterator<ChangeSet.Change> from, List<ChangeSet.Change> to) {
+        int bytes = 0;
+        while (from.hasNext()) {
+            ChangeSet.Change change = from.next();
+            int changeBytes = CHANGE_OVERHEAD
+                    + (change.getElement() == null ? 0 : BinaryCodec.estimateSize(change.getElement()));
+            if (!to.isEmpty() && bytes + changeBytes > Fragment.BUDGET) {
+                break;
+            }
+            to.add(change);
+            bytes += changeBytes;
+        }
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        subscribers.values().removeIf(subscriber -> subscriber.expiresAt < now);
+    }
+
+    private void publish(ChangeSet changes) {
+        for (Map.Entry<SocketAddress, Subscriber> entry : subscribers.entrySet()) {
+            Subscriber subscriber = entry.getValue();
+            Message message = new Message(false, Message.Head.CHANGES, changes);
+            message.setSession(subscriber.session);
+            try {
+                sender.send(subscriber.codec, message, entry.getKey());
+            } catch (IOException e) {
+                System.err.println("Could not push changes to " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Subscriber {
+        private final long session;
+        private final MessageCodec codec;
+        private final long expiresAt;
+
+        Subscriber(long session, MessageCodec codec, long expiresAt) {
+            this.session = session;
+            this.codec = codec;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
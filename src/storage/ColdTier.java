@@ -0,0 +1,790 @@
+package storage;
+
+import collection.CollectionElement;
+import collection.CollectionListener;
+import net.BinaryCodec;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class ColdTier implements CollectionListener, Closeable {
+    private static final int MAGIC = 0x4C36434F;
+    private static final int VERSION = 1;
+    private static final int HEADER = 28;
+    private static final int BLOCK = 64;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MIN_PURGE = 1024;
+    private static final Comparator<CollectionElement> ORDER = Comparator
+            .comparingDouble(CollectionElement::getSize)
+            .thenComparingLong(CollectionElement::getId);
+
+    private final File directory;
+    private final File tombstoneFile;
+    private final Object lock = new Object();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cold-tier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Segment> segments = new ArrayList<>();
+    private final NavigableSet<CollectionElement> pending = new TreeSet<>(ORDER);
+    private volatile Set<Long> tombstones = ConcurrentHashMap.newKeySet();
+    private DataOutputStream tombstoneLog;
+    private ByteBuffer scratch = ByteBuffer.allocate(0x1000);
+    private long nextSegment = 0;
+    private long epoch = 0;
+    private boolean scheduled = false;
+    private long evicted = 0;
+    private long merges = 0;
+
+    public ColdTier(File directory) throws IOException {
+        this.directory = directory;
+        tombstoneFile = new File(directory, "tombstones");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".dat"));
+        files = files == null ? new File[0] : files;
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        List<long[]> superseded = new ArrayList<>();
+        for (File file : files) {
+            nextSegment = Math.max(nextSegment, number(file) + 1);
+            superseded.add(Segment.supersedes(file));
+        }
+        for (File file : files) {
+            long number = number(file);
+            if (superseded.stream().anyMatch(range -> range[0] <= number && number <= range[1])) {
+                Files.delete(file.toPath());
+            } else {
+                segments.add(Segment.open(file));
+            }
+        }
+
+        if (tombstoneFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tombstoneFile)))) {
+                while (in.available() >= Long.BYTES) {
+                    long id = in.readLong();
+                    if (segments.stream().anyMatch(segment -> segment.indexOf(id) >= 0)) {
+                        tombstones.add(id);
+                    }
+                }
+            }
+        }
+        tombstoneLog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tombstoneFile, true)));
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return stored() - tombstones.size() + pending.size();
+        }
+    }
+
+    public long getMaxId() {
+        synchronized (lock) {
+            return Math.max(segments.stream().mapToLong(Segment::maxId).max().orElse(0),
+                    pending.stream().mapToLong(CollectionElement::getId).max().orElse(0));
+        }
+    }
+
+    public boolean contains(long id) {
+        synchronized (lock) {
+            return !tombstones.contains(id) && (segments.stream().anyMatch(segment -> segment.indexOf(id) >= 0)
+                    || pending.stream().anyMatch(element -> element.getId() == id));
+        }
+    }
+
+    public CollectionElement first() {
+        try (Scan scan = scan(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)) {
+            return scan.hasNext() ? scan.next() : null;
+        }
+    }
+
+    public CollectionElement last() {
+        try (Scan scan = scan(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)) {
+            return scan.last();
+        }
+    }
+
+    public Scan scan(double minSize, double maxSize) {
+        List<Segment> retained;
+        List<CollectionElement> waiting = new ArrayList<>();
+        Set<Long> dead;
+        synchronized (lock) {
+            retained = new ArrayList<>(segments);
+            retained.forEach(Segment::retain);
+            for (CollectionElement element : pending) {
+                if (element.getSize() >= minSize && element.getSize() <= maxSize) {
+                    waiting.add(element);
+                }
+            }
+            dead = tombstones;
+        }
+
+        try {
+            return new Scan(retained, waiting, dead, minSize, maxSize);
+        } catch (RuntimeException e) {
+            retained.forEach(Segment::release);
+            throw e;
+        }
+    }
+
+    public List<CollectionElement> collect(double minSize, double maxSize, Predicate<CollectionElement> filter,
+                                           Comparator<CollectionElement> order, int limit) {
+        List<CollectionElement> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+
+        try (Scan scan = scan(minSize, maxSize)) {
+            if (order == null) {
+                while (result.size() < limit && scan.hasNext()) {
+                    CollectionElement element = scan.next();
+                    if (filter.test(element)) {
+                        result.add(element);
+                    }
+                }
+                return result;
+            }
+
+            PriorityQueue<CollectionElement> top = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+            while (scan.hasNext()) {
+                CollectionElement element = scan.next();
+                if (filter.test(element)) {
+                    top.add(element);
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            result.addAll(top);
+            result.sort(order);
+            return result;
+        }
+    }
+
+    public void forEach(Consumer<CollectionElement> action) {
+        try (Scan scan = scan(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)) {
+            scan.forEachRemaining(action);
+        }
+    }
+
+    public CollectionElement removeById(long id) {
+        synchronized (lock) {
+            if (tombstones.contains(id)) {
+                return null;
+            }
+            Iterator<CollectionElement> waiting = pending.iterator();
+            while (waiting.hasNext()) {
+                CollectionElement element = waiting.next();
+                if (element.getId() == id) {
+                    waiting.remove();
+                    return element;
+                }
+            }
+            for (Segment segment : segments) {
+                int record = segment.indexOf(id);
+                if (record < 0) {
+                    continue;
+                }
+                CollectionElement element = new Cursor(segment, record).next();
+                bury(id);
+                if (tombstones.size() >= MIN_PURGE && tombstones.size() * 2L > stored()) {
+                    schedule();
+                }
+                return element;
+            }
+            return null;
+        }
+    }
+
+    public CollectionElement remove(CollectionElement element) {
+        List<CollectionElement> found = collect(element.getSize(), element.getSize(), element::equals, null, 1);
+        return found.isEmpty() ? null : removeById(found.get(0).getId());
+    }
+
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {
+                drain();
+                return null;
+            }).get();
+        } catch (RejectedExecutionException ignored) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + directory);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void added(CollectionElement element) {
+    }
+
+    @Override
+    public void removed(CollectionElement element) {
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public void evicted(List<CollectionElement> elements) {
+    }
+
+    @Override
+    public void evicting(List<CollectionElement> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+
+        synchronized (lock) {
+            pending.addAll(elements);
+            evicted += elements.size();
+            schedule();
+        }
+    }
+
+    @Override
+    public void cleared() {
+        try {
+            synchronized (lock) {
+                epoch++;
+                segments.forEach(Segment::release);
+                segments.clear();
+                pending.clear();
+                tombstones = ConcurrentHashMap.newKeySet();
+                resetTombstones();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not clear " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (lock) {
+                tombstoneLog.close();
+                for (Segment segment : segments) {
+                    segment.channel.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            long bytes = segments.stream().mapToLong(segment -> segment.file.length()).sum();
+            return String.format("cold tier: %d elements in %d segments, %d waiting to be written, %d bytes on disk, "
+                    + "%d evicted, %d merges", size(), segments.size(), pending.size(), bytes, evicted, merges);
+        }
+    }
+
+    private int stored() {
+        return segments.stream().mapToInt(segment -> segment.count).sum();
+    }
+
+    private void schedule() {
+        if (scheduled) {
+            return;
+        }
+        try {
+            writer.execute(this::maintain);
+            scheduled = true;
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private void maintain() {
+        try {
+            drain();
+            merge();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not move evicted elements to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void drain() throws IOException {
+        List<CollectionElement> batch;
+        long started;
+        synchronized (lock) {
+            scheduled = false;
+            batch = new ArrayList<>(pending);
+            started = epoch;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Segment segment = write(batch.iterator(), batch.size(), -1, -1);
+        synchronized (lock) {
+            if (started != epoch) {
+                segment.release();
+                return;
+            }
+            segments.add(segment);
+            for (CollectionElement element : batch) {
+                if (!pending.remove(element)) {
+                    bury(element.getId());
+                }
+            }
+        }
+    }
+
+    private void merge() throws IOException {
+        List<Segment> merging;
+        Set<Long> purged = new HashSet<>();
+        long started;
+        synchronized (lock) {
+            int from = segments.size();
+            if (segments.size() > MAX_SEGMENTS) {
+                long total = 0;
+                while (from > 0 && (segments.size() - from < 2 || segments.get(from - 1).count <= total)) {
+                    total += segments.get(--from).count;
+                }
+            } else if (tombstones.size() >= MIN_PURGE && tombstones.size() * 2L > stored()) {
+                from = 0;
+            } else {
+                return;
+            }
+
+            merging = new ArrayList<>(segments.subList(from, segments.size()));
+            merging.forEach(Segment::retain);
+            for (long id : tombstones) {
+                if (merging.stream().anyMatch(segment -> segment.indexOf(id) >= 0)) {
+                    purged.add(id);
+                }
+            }
+            started = epoch;
+        }
+
+        try {
+            int count = merging.stream().mapToInt(segment -> segment.count).sum() - purged.size();
+            Segment merged = write(new Merge(merging, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, purged),
+                    count, number(merging.get(0).file), number(merging.get(merging.size() - 1).file));
+            synchronized (lock) {
+                if (started != epoch) {
+                    merged.release();
+                    return;
+                }
+                int at = segments.indexOf(merging.get(0));
+                segments.removeAll(merging);
+                segments.add(at, merged);
+                merging.forEach(Segment::release);
+                Set<Long> remaining = ConcurrentHashMap.newKeySet();
+                remaining.addAll(tombstones);
+                remaining.removeAll(purged);
+                tombstones = remaining;
+                resetTombstones();
+                merges++;
+            }
+        } finally {
+            merging.forEach(Segment::release);
+        }
+    }
+
+    private void bury(long id) {
+        tombstones.add(id);
+        try {
+            tombstoneLog.writeLong(id);
+            tombstoneLog.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void resetTombstones() throws IOException {
+        tombstoneLog.close();
+        tombstoneLog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tombstoneFile, false)));
+        for (long id : tombstones) {
+            tombstoneLog.writeLong(id);
+        }
+        tombstoneLog.flush();
+    }
+
+    private Segment write(Iterator<CollectionElement> elements, int count, long supersedesFrom, long supersedesTo)
+            throws IOException {
+        File file = new File(directory, String.format("segment-%012d.dat", nextSegment++));
+        File temporary = new File(directory, file.getName() + ".tmp");
+        long[] ids = new long[count];
+        double[] blockSizes = new double[(count + BLOCK - 1) / BLOCK];
+        long[] blockOffsets = new long[blockSizes.length];
+        long offset = HEADER;
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(supersedesFrom);
+            out.writeLong(supersedesTo);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                if (!elements.hasNext()) {
+                    throw new IOException("Segment " + file + " ended after " + i + " of " + count + " elements");
+                }
+                CollectionElement element = elements.next();
+                int length = encode(element);
+                if (i % BLOCK == 0) {
+                    blockSizes[i / BLOCK] = element.getSize();
+                    blockOffsets[i / BLOCK] = offset;
+                }
+                ids[i] = element.getId();
+                out.writeInt(length);
+                out.write(scratch.array(), 0, length);
+                offset += Integer.BYTES + length;
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return new Segment(file, ids, blockSizes, blockOffsets);
+    }
+
+    private int encode(CollectionElement element) {
+        while (true) {
+            scratch.clear();
+            try {
+                BinaryCodec.writeElement(element, scratch);
+                return scratch.position();
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private static CollectionElement lastLive(Segment segment, Set<Long> dead) {
+        for (int block = segment.blockOffsets.length - 1; block >= 0; block--) {
+            List<CollectionElement> elements = new ArrayList<>(BLOCK);
+            Cursor cursor = new Cursor(segment, block * BLOCK);
+            for (int i = 0; i < BLOCK; i++) {
+                CollectionElement element = cursor.next();
+                if (element == null) {
+                    break;
+                }
+                elements.add(element);
+            }
+            for (int i = elements.size() - 1; i >= 0; i--) {
+                if (!dead.contains(elements.get(i).getId())) {
+                    return elements.get(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long number(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - ".dat".length()));
+    }
+
+    private static class Segment {
+        private final File file;
+        private final FileChannel channel;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final int count;
+        private final long[] ids;
+        private final int[] records;
+        private final double[] blockSizes;
+        private final long[] blockOffsets;
+
+        Segment(File file, long[] ids, double[] blockSizes, long[] blockOffsets) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.count = ids.length;
+            this.blockSizes = blockSizes;
+            this.blockOffsets = blockOffsets;
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> ids[i]));
+            this.ids = new long[count];
+            this.records = new int[count];
+            for (int i = 0; i < count; i++) {
+                this.ids[i] = ids[order[i]];
+                this.records[i] = order[i];
+            }
+        }
+
+        static long[] supersedes(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a cold tier segment: " + file);
+                }
+                return new long[]{in.readLong(), in.readLong()};
+            }
+        }
+
+        static Segment open(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a cold tier segment: " + file);
+                }
+                in.readLong();
+                in.readLong();
+                int count = in.readInt();
+                long[] ids = new long[count];
+                double[] blockSizes = new double[(count + BLOCK - 1) / BLOCK];
+                long[] blockOffsets = new long[blockSizes.length];
+                long offset = HEADER;
+                byte[] bytes = new byte[0x1000];
+                for (int i = 0; i < count; i++) {
+                    int length = in.readInt();
+                    if (length > bytes.length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                    CollectionElement element = BinaryCodec.readElement(ByteBuffer.wrap(bytes, 0, length));
+                    if (i % BLOCK == 0) {
+                        blockSizes[i / BLOCK] = element.getSize();
+                        blockOffsets[i / BLOCK] = offset;
+                    }
+                    ids[i] = element.getId();
+                    offset += Integer.BYTES + length;
+                }
+                return new Segment(file, ids, blockSizes, blockOffsets);
+            }
+        }
+
+        void retain() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if (references.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                System.err.println("Could not delete " + file + ": " + e.getMessage());
+            }
+        }
+
+        int indexOf(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index < 0 ? -1 : records[index];
+        }
+
+        long maxId() {
+            return count == 0 ? 0 : ids[count - 1];
+        }
+
+        int seek(double size) {
+            int low = 0;
+            int high = blockSizes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blockSizes[middle] < size) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return Math.max(low - 1, 0) * BLOCK;
+        }
+    }
+
+    private static class Cursor {
+        private final Segment segment;
+        private ByteBuffer buffer = ByteBuffer.allocate(0x2000);
+        private long position;
+        private int record;
+
+        Cursor(Segment segment, int record) {
+            this.segment = segment;
+            this.record = record / BLOCK * BLOCK;
+            buffer.flip();
+            if (segment.count > 0) {
+                position = segment.blockOffsets[record / BLOCK];
+            }
+            while (this.record < record) {
+                read();
+            }
+        }
+
+        CollectionElement next() {
+            if (record >= segment.count) {
+                return null;
+            }
+            try {
+                return BinaryCodec.readElement(read());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private ByteBuffer read() {
+            fill(Integer.BYTES);
+            int length = buffer.getInt();
+            fill(length);
+            ByteBuffer element = buffer.slice();
+            element.limit(length);
+            buffer.position(buffer.position() + length);
+            record++;
+            return element;
+        }
+
+        private void fill(int bytes) {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (bytes > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(bytes).put(buffer);
+            } else {
+                buffer.compact();
+            }
+            try {
+                while (buffer.position() < bytes) {
+                    int read = segment.channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new EOFException("Segment " + segment.file + " is truncated");
+                    }
+                    position += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.flip();
+        }
+    }
+
+    private static class Range {
+        private final Cursor cursor;
+        private final double minSize;
+        private final double maxSize;
+        private final Set<Long> dead;
+        private CollectionElement current;
+
+        Range(Segment segment, double minSize, double maxSize, Set<Long> dead) {
+            cursor = new Cursor(segment, segment.seek(minSize));
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.dead = dead;
+        }
+
+        boolean advance() {
+            while (true) {
+                current = cursor.next();
+                if (current == null || current.getSize() > maxSize) {
+                    current = null;
+                    return false;
+                }
+                if (current.getSize() >= minSize && !dead.contains(current.getId())) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static class Merge implements Iterator<CollectionElement> {
+        private final PriorityQueue<Range> heads = new PriorityQueue<>(MAX_SEGMENTS + 2,
+                (a, b) -> ORDER.compare(a.current, b.current));
+
+        Merge(List<Segment> merging, double minSize, double maxSize, Set<Long> dead) {
+            for (Segment segment : merging) {
+                Range range = new Range(segment, minSize, maxSize, dead);
+                if (range.advance()) {
+                    heads.add(range);
+                }
+            }
+        }
+
+        CollectionElement peek() {
+            Range range = heads.peek();
+            return range == null ? null : range.current;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public CollectionElement next() {
+            Range range = heads.poll();
+            if (range == null) {
+                throw new NoSuchElementException();
+            }
+            CollectionElement element = range.current;
+            if (range.advance()) {
+                heads.add(range);
+            }
+            return element;
+        }
+    }
+
+    public static class Scan implements Iterator<CollectionElement>, Closeable {
+        private final List<Segment> retained;
+        private final List<CollectionElement> waiting;
+        private final Set<Long> dead;
+        private final Merge merge;
+        private int nextWaiting = 0;
+        private boolean closed = false;
+
+        private Scan(List<Segment> retained, List<CollectionElement> waiting, Set<Long> dead,
+                     double minSize, double maxSize) {
+            this.retained = retained;
+            this.waiting = waiting;
+            this.dead = dead;
+            merge = new Merge(retained, minSize, maxSize, dead);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextWaiting < waiting.size() || merge.hasNext();
+        }
+
+        @Override
+        public CollectionElement next() {
+            CollectionElement stored = merge.peek();
+            if (nextWaiting < waiting.size()
+                    && (stored == null || ORDER.compare(waiting.get(nextWaiting), stored) < 0)) {
+                return waiting.get(nextWaiting++);
+            }
+            return merge.next();
+        }
+
+        CollectionElement last() {
+            CollectionElement last = waiting.isEmpty() ? null : waiting.get(waiting.size() - 1);
+            for (Segment segment : retained) {
+                CollectionElement candidate = lastLive(segment, dead);
+                if (candidate != null && (last == null || ORDER.compare(candidate, last) > 0)) {
+                    last = candidate;
+                }
+            }
+            return last;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                retained.forEach(Segment::release);
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package storage;
+
+import collection.CollectionElement;
+import collection.Position;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public final class ColumnarSnapshot {
+    private static final int MAGIC = 0x4C364353;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final byte FLAG_POSITION = 1;
+
+    private final long generation;
+    private final List<CollectionElement> elements;
+
+    private ColumnarSnapshot(long generation, List<CollectionElement> elements) {
+        this.generation = generation;
+        this.elements = elements;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<CollectionElement> getElements() {
+        return elements;
+    }
+
+    public static boolean isColumnar(File file) {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(magic, 0);
+            return magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static void write(File file, long generation, List<CollectionElement> elements) throws IOException {
+        int count = elements.size();
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int[] nameColumn = new int[count];
+        long nameBytes = 0;
+        for (int i = 0; i < count; i++) {
+            String name = elements.get(i).getName();
+            if (name == null) {
+                nameColumn[i] = -1;
+                continue;
+            }
+            Integer index = nameIndexes.get(name);
+            if (index == null) {
+                index = names.size();
+                nameIndexes.put(name, index);
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                names.add(bytes);
+                nameBytes += bytes.length;
+            }
+            nameColumn[i] = index;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter out = new ColumnWriter(channel);
+            out.buffer.putInt(MAGIC);
+            out.buffer.putInt(VERSION);
+            out.buffer.putLong(generation);
+            out.buffer.putLong(count);
+            out.buffer.putInt(names.size());
+            out.buffer.putLong(nameBytes);
+            out.pad(HEADER_SIZE);
+
+            for (CollectionElement element : elements) {
+                out.ensure(8).putDouble(element.getSize());
+            }
+            for (CollectionElement element : elements) {
+                Position position = element.getPosition();
+                out.ensure(8).putDouble(position == null ? 0 : position.getX());
+            }
+            for (CollectionElement element : elements) {
+                Position position = element.getPosition();
+                out.ensure(8).putDouble(position == null ? 0 : position.getY());
+            }
+            for (CollectionElement element : elements) {
+                out.ensure(8).putLong(element.getCreationDate().getTime());
+            }
+            for (CollectionElement element : elements) {
+                out.ensure(8).putLong(element.getId());
+            }
+            for (int index : nameColumn) {
+                out.ensure(4).putInt(index);
+            }
+            for (CollectionElement element : elements) {
+                out.ensure(1).put(element.getPosition() == null ? 0 : FLAG_POSITION);
+            }
+            out.align();
+
+            int offset = 0;
+            for (byte[] name : names) {
+                out.ensure(4).putInt(offset);
+                offset += name.length;
+            }
+            out.ensure(4).putInt(offset);
+            for (byte[] name : names) {
+                out.write(name);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ColumnarSnapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+            int version = header.getInt() == MAGIC ? header.getInt() : 0;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Not a columnar snapshot: " + file);
+            }
+
+            long generation = header.getLong();
+            long longCount = header.getLong();
+            int nameCount = header.getInt();
+            long nameBytes = header.getLong();
+            if (longCount < 0 || longCount > Integer.MAX_VALUE / 8 || nameCount < 0 || nameCount > longCount) {
+                throw new IOException("Damaged columnar snapshot: " + file);
+            }
+
+            int count = (int) longCount;
+            long offset = HEADER_SIZE;
+            double[] sizes = new double[count];
+            map(channel, offset, 8L * count).asDoubleBuffer().get(sizes);
+            offset += 8L * count;
+            double[] xs = new double[count];
+            map(channel, offset, 8L * count).asDoubleBuffer().get(xs);
+            offset += 8L * count;
+            double[] ys = new double[count];
+            map(channel, offset, 8L * count).asDoubleBuffer().get(ys);
+            offset += 8L * count;
+            long[] creationDates = new long[count];
+            map(channel, offset, 8L * count).asLongBuffer().get(creationDates);
+            offset += 8L * count;
+            long[] ids = new long[count];
+            if (version > 1) {
+                map(channel, offset, 8L * count).asLongBuffer().get(ids);
+                offset += 8L * count;
+            }
+            int[] nameColumn = new int[count];
+            map(channel, offset, 4L * count).asIntBuffer().get(nameColumn);
+            offset += 4L * count;
+            byte[] flags = new byte[count];
+            map(channel, offset, count).get(flags);
+            offset = align(offset + count);
+
+            int[] nameOffsets = new int[nameCount + 1];
+            map(channel, offset, 4L * (nameCount + 1)).asIntBuffer().get(nameOffsets);
+            offset += 4L * (nameCount + 1);
+            if (nameOffsets[nameCount] != nameBytes) {
+                throw new IOException("Damaged columnar snapshot: " + file);
+            }
+            ByteBuffer nameTable = map(channel, offset, nameBytes);
+            String[] names = new String[nameCount];
+            byte[] scratch = new byte[0x100];
+            for (int i = 0; i < nameCount; i++) {
+                int length = nameOffsets[i + 1] - nameOffsets[i];
+                if (length > scratch.length) {
+                    scratch = new byte[length];
+                }
+                nameTable.position(nameOffsets[i]);
+                nameTable.get(scratch, 0, length);
+                names[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            List<CollectionElement> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = nameColumn[i] < 0 ? null : names[nameColumn[i]];
+                Position position = (flags[i] & FLAG_POSITION) != 0 ? new Position(xs[i], ys[i]) : null;
+                CollectionElement element = new CollectionElement(name, sizes[i], position, new Date(creationDates[i]));
+                element.setId(ids[i]);
+                elements.add(element);
+            }
+            return new ColumnarSnapshot(generation, elements);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Damaged columnar snapshot: " + file, e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE || offset + length > channel.size()) {
+            throw new IOException("Damaged columnar snapshot");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long written = 0;
+
+        ColumnWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = Math.min(ensure(1).remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void pad(long position) throws IOException {
+            while (written + buffer.position() < position) {
+                ensure(1).put((byte) 0);
+            }
+        }
+
+        void align() throws IOException {
+            pad(ColumnarSnapshot.align(written + buffer.position()));
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package storage;
+
+import collection.SortedCollection;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ColumnarStorage implements Storage {
+    private final File file;
+
+    public ColumnarStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void load(SortedCollection collection) throws IOException {
+        collection.replaceAll(ColumnarSnapshot.read(file).getElements());
+    }
+
+    @Override
+    public void save(SortedCollection collection) throws IOException {
+        synchronized (file) {
+            ColumnarSnapshot.write(file, 0, collection.current());
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
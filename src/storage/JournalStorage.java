@@ -0,0 +1,427 @@
+package storage;
+
+import collection.CollectionElement;
+import collection.CollectionListener;
+import collection.SortedCollection;
+import net.BinaryCodec;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class JournalStorage implements Storage, CollectionListener {
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int MAX_RECORD = 1 << 24;
+
+    private final File base;
+    private final int compactAfter;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 20);
+    private ByteBuffer scratch = ByteBuffer.allocate(0x1000);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long generation;
+    private long records;
+    private boolean compacting;
+    private SortedCollection collection;
+    private volatile ColdTier coldTier;
+
+    public JournalStorage(File base, int syncIntervalMillis, int compactAfter) {
+        this.base = base;
+        this.compactAfter = compactAfter;
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void load(SortedCollection collection) throws IOException {
+        collection.removeListener(this);
+
+        List<CollectionElement> elements;
+        boolean legacy;
+        synchronized (lock) {
+            closeJournal();
+            this.collection = collection;
+
+            Replay replay = new Replay();
+            File snapshot = snapshotFile();
+            long snapshotGeneration = 0;
+            if (ColumnarSnapshot.isColumnar(snapshot)) {
+                ColumnarSnapshot columnar = ColumnarSnapshot.read(snapshot);
+                columnar.getElements().forEach(replay::add);
+                snapshotGeneration = columnar.getGeneration();
+            } else if (snapshot.exists()) {
+                snapshotGeneration = SnapshotFile.read(snapshot, replay::add);
+            }
+            List<Long> journals = journalGenerations();
+            for (long journalGeneration : journals) {
+                if (journalGeneration >= snapshotGeneration) {
+                    replay(journalFile(journalGeneration), replay);
+                }
+            }
+
+            legacy = !snapshot.exists() && journals.isEmpty() && base.exists();
+            elements = replay.getElements();
+            if (legacy) {
+                try {
+                    elements = new XmlStorage(base).read();
+                } catch (IOException e) {
+                    System.err.println("Could not load file. Using empty collection");
+                }
+            }
+
+            generation = journals.isEmpty()
+                    ? snapshotGeneration
+                    : Math.max(snapshotGeneration, journals.get(journals.size() - 1));
+            channel = FileChannel.open(journalFile(generation).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            records = 0;
+            compacting = legacy;
+        }
+
+        collection.replaceAll(elements);
+        collection.addListener(this);
+        if (legacy) {
+            compactInBackground();
+        }
+    }
+
+    public void setColdTier(ColdTier coldTier) {
+        this.coldTier = coldTier;
+    }
+
+    @Override
+    public void save(SortedCollection collection) throws IOException {
+        sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (lock) {
+            if (collection != null) {
+                collection.removeListener(this);
+            }
+            closeJournal();
+        }
+    }
+
+    @Override
+    public void added(CollectionElement element) {
+        append(ADD, element);
+    }
+
+    @Override
+    public void removed(CollectionElement element) {
+        append(REMOVE, element);
+    }
+
+    @Override
+    public void cleared() {
+        append(CLEAR, null);
+    }
+
+    @Override
+    public void relocated(Collection<CollectionElement> elements) {
+    }
+
+    @Override
+    public void evicted(List<CollectionElement> elements) {
+        if (coldTier == null) {
+            elements.forEach(this::removed);
+        }
+    }
+
+    @Override
+    public void removedEvicted(CollectionElement element) {
+        removed(element);
+    }
+
+    public void sync() throws IOException {
+        FileChannel toForce;
+        synchronized (lock) {
+            flush();
+            toForce = channel;
+        }
+
+        if (toForce != null && toForce.isOpen()) {
+            toForce.force(false);
+        }
+    }
+
+    public void compact() throws IOException {
+        SortedCollection current;
+        synchronized (lock) {
+            current = collection;
+        }
+        if (current == null) {
+            return;
+        }
+
+        long[] rotated = new long[1];
+        List<CollectionElement> elements = current.snapshot(() -> {
+            synchronized (lock) {
+                try {
+                    rotate();
+                    rotated[0] = generation;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        long snapshotGeneration = rotated[0];
+
+        ColdTier evictedTo = coldTier;
+        if (evictedTo != null) {
+            evictedTo.flush();
+        }
+        ColumnarSnapshot.write(snapshotFile(), snapshotGeneration, elements);
+        for (long journalGeneration : journalGenerations()) {
+            if (journalGeneration < snapshotGeneration) {
+                Files.deleteIfExists(journalFile(journalGeneration).toPath());
+            }
+        }
+    }
+
+    private void compactInBackground() {
+        executor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException | UncheckedIOException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (lock) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    private void append(byte type, CollectionElement element) {
+        synchronized (lock) {
+            if (channel == null) {
+                return;
+            }
+
+            encodeRecord(type, element);
+            int length = scratch.position();
+            try {
+                if (pending.remaining() < length + 8) {
+                    flush();
+                    if (pending.capacity() < length + 8) {
+                        pending = ByteBuffer.allocate(length + 8);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            crc.reset();
+            crc.update(scratch.array(), 0, length);
+            pending.putInt(length);
+            pending.putInt((int) crc.getValue());
+            pending.put(scratch.array(), 0, length);
+
+            if (++records >= compactAfter && !compacting) {
+                compacting = true;
+                compactInBackground();
+            }
+        }
+    }
+
+    private void encodeRecord(byte type, CollectionElement element) {
+        while (true) {
+            scratch.clear();
+            try {
+                scratch.put(type);
+                if (element != null) {
+                    BinaryCodec.writeElement(element, scratch);
+                }
+                return;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (channel == null || pending.position() == 0) {
+            return;
+        }
+
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+    }
+
+    private void rotate() throws IOException {
+        flush();
+        channel.force(false);
+        channel.close();
+        generation++;
+        channel = FileChannel.open(journalFile(generation).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = 0;
+    }
+
+    private void closeJournal() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void replay(File file, Replay replay) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] bytes = new byte[0x1000];
+            CRC32 recordCrc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int checksum;
+                try {
+                    if (length < 1 || length > MAX_RECORD) {
+                        break;
+                    }
+                    checksum = in.readInt();
+                    if (length > bytes.length) {
+                        bytes = new byte[length];
+                    }
+                    in.readFully(bytes, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                recordCrc.reset();
+                recordCrc.update(bytes, 0, length);
+                if ((int) recordCrc.getValue() != checksum) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(bytes, 0, length);
+                byte type = record.get();
+                if (type == ADD) {
+                    replay.add(BinaryCodec.readElement(record));
+                } else if (type == REMOVE) {
+                    replay.remove(BinaryCodec.readElement(record));
+                } else if (type == CLEAR) {
+                    replay.clear();
+                } else {
+                    break;
+                }
+                valid += 8 + length;
+            }
+        }
+
+        if (valid < file.length()) {
+            System.err.printf("Journal %s has a damaged tail, truncating it to %d bytes%n", file, valid);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            }
+        }
+    }
+
+    private File snapshotFile() {
+        return new File(base.getPath() + ".snapshot");
+    }
+
+    private File journalFile(long journalGeneration) {
+        return new File(base.getPath() + ".journal." + journalGeneration);
+    }
+
+    private List<Long> journalGenerations() {
+        File directory = base.getAbsoluteFile().getParentFile();
+        String prefix = base.getName() + ".journal.";
+        List<Long> generations = new ArrayList<>();
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix)) {
+                    try {
+                        generations.add(Long.parseLong(file.getName().substring(prefix.length())));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static class Replay {
+        private final Map<CollectionElement, Deque<CollectionElement>> elements = new LinkedHashMap<>();
+
+        void add(CollectionElement element) {
+            elements.computeIfAbsent(element, k -> new ArrayDeque<>()).add(element);
+        }
+
+        void remove(CollectionElement element) {
+            Deque<CollectionElement> same = elements.get(element);
+            if (same == null) {
+                return;
+            }
+
+            Iterator<CollectionElement> iterator = same.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getId() == element.getId()) {
+                    iterator.remove();
+                    break;
+                }
+                if (!iterator.hasNext()) {
+                    same.poll();
+                }
+            }
+            if (same.isEmpty()) {
+                elements.remove(element);
+            }
+        }
+
+        void clear() {
+            elements.clear();
+        }
+
+        List<CollectionElement> getElements() {
+            List<CollectionElement> list = new ArrayList<>();
+            elements.values().forEach(list::addAll);
+            return list;
+        }
+    }
+}
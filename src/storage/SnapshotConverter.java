@@ -0,0 +1,24 @@
+package storage;
+
+import collection.CollectionElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class SnapshotConverter {
+    private SnapshotConverter() {
+    }
+
+    public static int convert(File input, File output) throws IOException {
+        if (ColumnarSnapshot.isColumnar(input)) {
+            List<CollectionElement> elements = ColumnarSnapshot.read(input).getElements();
+            new XmlStorage(output).write(elements);
+            return elements.size();
+        }
+
+        List<CollectionElement> elements = new XmlStorage(input).read();
+        ColumnarSnapshot.write(output, 0, elements);
+        return elements.size();
+    }
+}
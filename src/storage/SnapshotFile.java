@@ -0,0 +1,37 @@
+package storage;
+
+import collection.CollectionElement;
+import net.BinaryCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+class SnapshotFile {
+    private static final int MAGIC = 0x4C36534E;
+    private static final int VERSION = 1;
+
+    private SnapshotFile() {
+    }
+
+    static long read(File file, Consumer<CollectionElement> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+
+            long generation = in.readLong();
+            int count = in.readInt();
+            byte[] bytes = new byte[0x1000];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                in.readFully(bytes, 0, length);
+                consumer.accept(BinaryCodec.readElement(ByteBuffer.wrap(bytes, 0, length)));
+            }
+            return generation;
+        }
+    }
+}
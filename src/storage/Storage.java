@@ -0,0 +1,12 @@
+package storage;
+
+import collection.SortedCollection;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface Storage extends Closeable {
+    void load(SortedCollection collection) throws IOException;
+
+    void save(SortedCollection collection) throws IOException;
+}
@@ -0,0 +1,119 @@
+package storage;
+
+import collection.CollectionElement;
+import collection.SortedCollection;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class XmlStorage implements Storage {
+    private final File file;
+    private final XStream xStream = new XStream();
+
+    public XmlStorage(File file) {
+        this.file = file;
+    }
+
+    public List<CollectionElement> read() throws IOException {
+        Object obj;
+        synchronized (xStream) {
+            try {
+                obj = xStream.fromXML(file);
+            } catch (Exception e) {
+                throw new IOException("Could not load file", e);
+            }
+        }
+
+        List<CollectionElement> elements = new ArrayList<>();
+        if (obj instanceof Collection) {
+            for (Object o : (Collection<?>) obj) {
+                if (!(o instanceof CollectionElement)) {
+                    throw new IOException("File does not contain a collection");
+                }
+                elements.add((CollectionElement) o);
+            }
+        }
+        return elements;
+    }
+
+    public static int stream(XStream xStream, InputStream in, int batchSize,
+                             Consumer<List<CollectionElement>> sink) throws IOException {
+        int count = 0;
+        List<CollectionElement> batch = new ArrayList<>(batchSize);
+        HierarchicalStreamReader reader = null;
+        try {
+            reader = new StaxDriver().createReader(in);
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                Object obj = xStream.unmarshal(reader);
+                reader.moveUp();
+                if (!(obj instanceof CollectionElement) || !((CollectionElement) obj).isValid()) {
+                    throw new IOException("Element " + (count + 1) + " is not a valid collection element");
+                }
+
+                batch.add((CollectionElement) obj);
+                count++;
+                if (batch.size() >= batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (XStreamException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Malformed XML after " + count + " elements", e);
+        } finally {
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return count;
+    }
+
+    public void write(Collection<CollectionElement> elements) throws IOException {
+        synchronized (file) {
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                List<CollectionElement> list = new ArrayList<>(elements.size());
+                for (CollectionElement element : elements) {
+                    list.add(element.getClass() == CollectionElement.class ? element : plain(element));
+                }
+                synchronized (xStream) {
+                    xStream.toXML(list, outputStream);
+                }
+            }
+        }
+    }
+
+    private static CollectionElement plain(CollectionElement element) {
+        CollectionElement copy = new CollectionElement(element.getName(), element.getSize(), element.getPosition(),
+                element.getCreationDate());
+        copy.setId(element.getId());
+        return copy;
+    }
+
+    @Override
+    public void load(SortedCollection collection) throws IOException {
+        collection.replaceAll(read());
+    }
+
+    @Override
+    public void save(SortedCollection collection) throws IOException {
+        write(collection.current());
+    }
+
+    @Override
+    public void close() {
+    }
+}